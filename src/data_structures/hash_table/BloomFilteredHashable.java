@@ -0,0 +1,241 @@
+package data_structures.hash_table;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Decorator that keeps a counting Bloom filter of the keys in front of another
+ * {@link Hashable}. A lookup of a key the filter has never seen returns right
+ * away, without hashing into the table or calling {@code equals} on its keys.
+ * Lookups the filter can't rule out are passed to the table, so the decorator
+ * never changes the results, only how fast misses are.
+ * <p>
+ * Every counter of the filter takes 4 bits. Counters are incremented on
+ * insertion and decremented on removal, which keeps the filter exact under
+ * removals. A counter that reaches 15 stays there for good: it can no longer
+ * be decremented safely, so the filter just loses a bit of precision.
+ * <p>
+ * The filter is sized once, for the expected number of keys and the wanted
+ * false positive rate. Holding more keys than expected only raises the false
+ * positive rate. The filter only sees {@code hashCode}, so keys with equal
+ * hash codes are indistinguishable to it. All updates must go through the
+ * decorator, so the wrapped table must be empty when it is wrapped. The
+ * decorator is not thread safe.
+ */
+public class BloomFilteredHashable<K, V> implements Hashable<K, V> {
+
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long COUNTER_MAX = (1 << COUNTER_BITS) - 1;
+
+    private final Hashable<K, V> table;
+    private final long[] counters;
+    private final int counterCount;
+    private final int hashFunctions;
+
+    //Lookups made through containsKey and get
+    private long lookups = 0;
+    //Lookups answered by the filter alone
+    private long filteredMisses = 0;
+    //Lookups the filter let through although the key was absent
+    private long falsePositives = 0;
+
+    public BloomFilteredHashable(Hashable<K, V> table, int expectedKeys, double falsePositiveRate) {
+        if (!table.isEmpty()) {
+            throw new IllegalArgumentException("Table must be empty");
+        }
+
+        if (expectedKeys <= 0) {
+            throw new IllegalArgumentException("Invalid expectedKeys");
+        }
+
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid falsePositiveRate");
+        }
+
+        //Optimal filter size and number of hash functions for the given rate
+        double ln2 = Math.log(2);
+        long optimal = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.counterCount = (int) Math.max(COUNTERS_PER_WORD, Math.min(optimal, Integer.MAX_VALUE - COUNTERS_PER_WORD));
+        this.hashFunctions = Math.max(1, (int) Math.round((double) counterCount / expectedKeys * ln2));
+        this.counters = new long[(counterCount + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD];
+        this.table = table;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+        Arrays.fill(counters, 0L);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        lookups++;
+        if (!mightContain(key)) {
+            filteredMisses++;
+            return false;
+        }
+        boolean found = table.containsKey(key);
+        if (!found) falsePositives++;
+        return found;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return table.containsValue(value);
+    }
+
+    @Override
+    public V get(K key) {
+        lookups++;
+        if (!mightContain(key)) {
+            filteredMisses++;
+            return null;
+        }
+        V value = table.get(key);
+        //A null value of a present key counts as a false positive, which only understates the filter
+        if (value == null) falsePositives++;
+        return value;
+    }
+
+    /**
+     * The counters of the key are incremented only if the table had no value
+     * for it. A key that was mapped to {@code null} may be counted twice,
+     * which makes the filter less precise but never hides a key.
+     */
+    @Override
+    public V put(K key, V value) {
+        V old = table.put(key, value);
+        if (old == null) update(key, 1);
+        return old;
+    }
+
+    //Removals of keys mapped to null keep their counters, see put
+    @Override
+    public V remove(K key) {
+        if (!mightContain(key)) {
+            return null;
+        }
+        V old = table.remove(key);
+        if (old != null) update(key, -1);
+        return old;
+    }
+
+    public long lookups() {
+        return lookups;
+    }
+
+    public long filteredMisses() {
+        return filteredMisses;
+    }
+
+    public long falsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * Returns the share of the lookups of absent keys that the filter failed to
+     * answer, or 0 if there were no such lookups yet.
+     */
+    public double observedFalsePositiveRate() {
+        long misses = filteredMisses + falsePositives;
+        return misses == 0 ? 0 : (double) falsePositives / misses;
+    }
+
+    public void resetCounters() {
+        lookups = filteredMisses = falsePositives = 0;
+    }
+
+    private boolean mightContain(K key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++) {
+            if (counter(index(h1 + i * h2)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Adds delta to every counter of the key, leaving saturated counters alone
+    private void update(K key, int delta) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++) {
+            int index = index(h1 + i * h2);
+            long value = counter(index);
+            if (value == COUNTER_MAX) {
+                continue;
+            }
+            int shift = (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+            counters[index / COUNTERS_PER_WORD] += (long) delta << shift;
+        }
+    }
+
+    private long counter(int index) {
+        int shift = (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+        return (counters[index / COUNTERS_PER_WORD] >>> shift) & COUNTER_MAX;
+    }
+
+    //Maps a 32 bit hash onto [0, counterCount) without a division
+    private int index(int hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * counterCount) >>> 32);
+    }
+
+    //Expands the key hash code to the two 32 bit hashes of double hashing
+    private static long hash(Object key) {
+        long h = Objects.hashCode(key) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        //Keeps the second hash nonzero, so the k indices differ
+        return h | 1L << 32;
+    }
+
+    @Override
+    public String toString() {
+        return table.toString();
+    }
+
+    public static void main(String[] args) {
+        BloomFilteredHashable<Integer, String> custom =
+                new BloomFilteredHashable<>(new NodeBasedHashTableSeparateChaining<>(), 100, 0.01);
+
+        for (int i = 0; i < 20; i++) {
+            custom.put(i, "Value:" + i);
+        }
+
+        custom.put(0, "Value:" + 199);
+
+        System.out.println(custom);
+
+        System.out.println("Is empty: " + custom.isEmpty());
+        System.out.println("Count: " + custom.size());
+        System.out.println("GET: " + custom.get(19));
+        System.out.println("Contains key 14: " + custom.containsKey(14));
+        System.out.println("ContainsValue 17: " + custom.containsValue("Value:" + 17));
+        System.out.println("Removed value: " + custom.remove(0));
+        System.out.println("Count: " + custom.size());
+
+        for (int i = 100; i < 1100; i++) {
+            custom.get(i);
+        }
+        System.out.println("Lookups: " + custom.lookups()
+                + ", filtered misses: " + custom.filteredMisses()
+                + ", false positives: " + custom.falsePositives());
+
+        System.out.println(custom);
+    }
+}
@@ -0,0 +1,603 @@
+package data_structures.hash_table;
+
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Thread safe hash table with separate chaining, modeled after
+ * {@code java.util.concurrent.ConcurrentHashMap}.
+ * <ul>
+ * <li>{@code get} takes no locks. Nodes publish their fields through volatile
+ * writes, so a reader always walks a consistent chain.</li>
+ * <li>An empty bucket is filled with a single CAS. Updates of a non-empty
+ * bucket lock its first node, so every bucket is its own lock stripe and
+ * writers only contend when they hit the same bucket.</li>
+ * <li>A resize is cooperative. The old table is cut into ranges of
+ * {@link #TRANSFER_STRIDE} buckets, and every writer that runs into the
+ * resize claims ranges and moves them until none are left. A moved bucket is
+ * replaced with a forwarding node that sends readers and writers to the new
+ * table, so nobody waits for the whole resize to complete.</li>
+ * </ul>
+ * {@code size}, {@code containsValue} and {@code toString} are weakly
+ * consistent. Nullable keys and values are not allowed.
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentHashTable<K, V> implements ConcurrentHashable<K, V> {
+
+    //Hashes of the special nodes, hashes of the regular nodes are never negative
+    private static final int MOVED = -1;
+    private static final int RESERVED = -2;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double LOAD_FACTOR = 0.75;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    //Number of buckets a thread claims at once during resize
+    private static final int TRANSFER_STRIDE = 16;
+
+    private static class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public String toString() {
+            return key + " => " + value;
+        }
+    }
+
+    //Placed into a bucket that has already been moved to the next table
+    private static final class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    //Locks an empty bucket while computeIfAbsent runs the mapping function
+    private static final class ReservationNode<K, V> extends Node<K, V> {
+        ReservationNode() {
+            super(RESERVED, null, null, null);
+        }
+    }
+
+    //State shared by all threads that take part in a single resize
+    private static final class Resize<K, V> {
+        final AtomicReferenceArray<Node<K, V>> table;
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+        final ForwardingNode<K, V> forwarding;
+        //Buckets below this index are not claimed yet
+        final AtomicInteger transferIndex;
+        //Threads currently moving buckets, 0 once the resize is completed
+        final AtomicInteger helpers = new AtomicInteger(1);
+
+        Resize(AtomicReferenceArray<Node<K, V>> table) {
+            this.table = table;
+            nextTable = new AtomicReferenceArray<>(table.length() * 2);
+            forwarding = new ForwardingNode<>(nextTable);
+            transferIndex = new AtomicInteger(table.length());
+        }
+
+        boolean join() {
+            return helpers.getAndUpdate(h -> h == 0 ? 0 : h + 1) != 0;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+    private volatile int threshold;
+    private final AtomicReference<Resize<K, V>> resize = new AtomicReference<>();
+    private final Object resizeLock = new Object();
+    private final LongAdder count = new LongAdder();
+
+    public ConcurrentHashTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ConcurrentHashTable(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        int n = tableSizeFor(Math.max(capacity, 2));
+        table = new AtomicReferenceArray<>(n);
+        threshold = (int) (n * LOAD_FACTOR);
+    }
+
+    @Override
+    public int size() {
+        long n = count.sum();
+        return n < 0 ? 0 : (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.sum() <= 0;
+    }
+
+    @Override
+    public void clear() {
+        long delta = 0;
+        int i = 0;
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (i < tab.length()) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                i++;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        for (Node<K, V> e = f; e != null; e = e.next) {
+                            delta--;
+                        }
+                        tab.set(i, null);
+                        i++;
+                    }
+                }
+            }
+        }
+        count.add(delta);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        checkValueNotNull(value);
+        return anyNode(e -> value.equals(e.value));
+    }
+
+    @Override
+    public V get(K key) {
+        checkKeyNotNull(key);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            Node<K, V> e = tab.get(hash & (tab.length() - 1));
+            if (e == null || e.hash == RESERVED) {
+                return null;
+            }
+            if (e.hash == MOVED) {
+                tab = ((ForwardingNode<K, V>) e).nextTable;
+                continue;
+            }
+            for (; e != null; e = e.next) {
+                if (e.hash == hash && e.key.equals(key)) {
+                    return e.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    private V putVal(K key, V value, boolean onlyIfAbsent) {
+        checkKeyNotNull(key);
+        checkValueNotNull(value);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = hash & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, new Node<>(hash, key, value, null))) {
+                    addCount(1, tab);
+                    return null;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(f);
+            } else {
+                V old = null;
+                boolean done = false;
+                boolean added = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        Node<K, V> e = f;
+                        while (true) {
+                            if (e.hash == hash && e.key.equals(key)) {
+                                old = e.value;
+                                if (!onlyIfAbsent) {
+                                    e.value = value;
+                                }
+                                break;
+                            }
+                            if (e.next == null) {
+                                e.next = new Node<>(hash, key, value, null);
+                                added = true;
+                                break;
+                            }
+                            e = e.next;
+                        }
+                    }
+                }
+                if (done) {
+                    if (added) {
+                        addCount(1, tab);
+                    }
+                    return old;
+                }
+            }
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        checkKeyNotNull(key);
+        Objects.requireNonNull(mappingFunction);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = hash & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                ReservationNode<K, V> reservation = new ReservationNode<>();
+                V value = null;
+                boolean done = false;
+                synchronized (reservation) {
+                    if (tab.compareAndSet(i, null, reservation)) {
+                        done = true;
+                        Node<K, V> node = null;
+                        try {
+                            value = mappingFunction.apply(key);
+                            if (value != null) {
+                                node = new Node<>(hash, key, value, null);
+                            }
+                        } finally {
+                            tab.set(i, node);
+                        }
+                    }
+                }
+                if (done) {
+                    if (value != null) {
+                        addCount(1, tab);
+                    }
+                    return value;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(f);
+            } else {
+                V value = null;
+                boolean done = false;
+                boolean added = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        Node<K, V> e = f;
+                        while (true) {
+                            if (e.hash == hash && e.key.equals(key)) {
+                                value = e.value;
+                                break;
+                            }
+                            if (e.next == null) {
+                                value = mappingFunction.apply(key);
+                                if (value != null) {
+                                    e.next = new Node<>(hash, key, value, null);
+                                    added = true;
+                                }
+                                break;
+                            }
+                            e = e.next;
+                        }
+                    }
+                }
+                if (done) {
+                    if (added) {
+                        addCount(1, tab);
+                    }
+                    return value;
+                }
+            }
+        }
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        checkKeyNotNull(key);
+        checkValueNotNull(value);
+        Objects.requireNonNull(remappingFunction);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = hash & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, new Node<>(hash, key, value, null))) {
+                    addCount(1, tab);
+                    return value;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(f);
+            } else {
+                V result = null;
+                int delta = 0;
+                boolean done = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        Node<K, V> e = f;
+                        Node<K, V> pred = null;
+                        while (true) {
+                            if (e.hash == hash && e.key.equals(key)) {
+                                result = remappingFunction.apply(e.value, value);
+                                if (result != null) {
+                                    e.value = result;
+                                } else {
+                                    unlink(tab, i, pred, e);
+                                    delta = -1;
+                                }
+                                break;
+                            }
+                            if (e.next == null) {
+                                e.next = new Node<>(hash, key, value, null);
+                                result = value;
+                                delta = 1;
+                                break;
+                            }
+                            pred = e;
+                            e = e.next;
+                        }
+                    }
+                }
+                if (done) {
+                    if (delta != 0) {
+                        addCount(delta, tab);
+                    }
+                    return result;
+                }
+            }
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        checkKeyNotNull(key);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = hash & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                return null;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(f);
+            } else {
+                V old = null;
+                boolean done = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        Node<K, V> pred = null;
+                        for (Node<K, V> e = f; e != null; pred = e, e = e.next) {
+                            if (e.hash == hash && e.key.equals(key)) {
+                                old = e.value;
+                                unlink(tab, i, pred, e);
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (done) {
+                    if (old != null) {
+                        addCount(-1, tab);
+                    }
+                    return old;
+                }
+            }
+        }
+    }
+
+    //Must be called while holding the lock on the first node of the bucket
+    private void unlink(AtomicReferenceArray<Node<K, V>> tab, int i, Node<K, V> pred, Node<K, V> e) {
+        if (pred == null) {
+            tab.set(i, e.next);
+        } else {
+            pred.next = e.next;
+        }
+    }
+
+    private void addCount(long delta, AtomicReferenceArray<Node<K, V>> tab) {
+        count.add(delta);
+        if (delta > 0 && count.sum() >= threshold) {
+            tryResize(tab);
+        }
+    }
+
+    private void tryResize(AtomicReferenceArray<Node<K, V>> tab) {
+        Resize<K, V> r = resize.get();
+        if (r != null) {
+            if (r.join()) {
+                transfer(r);
+            }
+            return;
+        }
+
+        synchronized (resizeLock) {
+            if (resize.get() != null || table != tab
+                    || count.sum() < threshold || tab.length() >= MAXIMUM_CAPACITY) {
+                return;
+            }
+            r = new Resize<>(tab);
+            resize.set(r);
+        }
+        transfer(r);
+    }
+
+    //Helps with the resize that moved the bucket and returns the table to retry with
+    private AtomicReferenceArray<Node<K, V>> helpTransfer(Node<K, V> f) {
+        AtomicReferenceArray<Node<K, V>> nextTable = ((ForwardingNode<K, V>) f).nextTable;
+        Resize<K, V> r = resize.get();
+        if (r != null && r.nextTable == nextTable && r.join()) {
+            transfer(r);
+        }
+        return nextTable;
+    }
+
+    /**
+     * Claims ranges of old buckets and moves them until none are left. The
+     * thread that finishes last publishes the new table. The caller must have
+     * joined the resize.
+     */
+    private void transfer(Resize<K, V> r) {
+        int hi;
+        while ((hi = r.transferIndex.getAndAdd(-TRANSFER_STRIDE)) > 0) {
+            for (int i = Math.max(0, hi - TRANSFER_STRIDE); i < hi; i++) {
+                transferBucket(r, i);
+            }
+        }
+
+        if (r.helpers.decrementAndGet() == 0) {
+            table = r.nextTable;
+            threshold = (int) (r.nextTable.length() * LOAD_FACTOR);
+            resize.set(null);
+        }
+    }
+
+    /**
+     * Splits the bucket into the two buckets of the doubled table: entries
+     * with the bit {@code n} of the hash unset stay at index {@code i},
+     * the rest go to {@code i + n}. Nodes are copied rather than relinked,
+     * so readers that are still walking the old chain are not disturbed.
+     */
+    private void transferBucket(Resize<K, V> r, int i) {
+        AtomicReferenceArray<Node<K, V>> tab = r.table;
+        int n = tab.length();
+        while (true) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, r.forwarding)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (f) {
+                if (tab.get(i) != f) {
+                    continue;
+                }
+                Node<K, V> lo = null;
+                Node<K, V> hi = null;
+                for (Node<K, V> e = f; e != null; e = e.next) {
+                    if ((e.hash & n) == 0) {
+                        lo = new Node<>(e.hash, e.key, e.value, lo);
+                    } else {
+                        hi = new Node<>(e.hash, e.key, e.value, hi);
+                    }
+                }
+                r.nextTable.set(i, lo);
+                r.nextTable.set(i + n, hi);
+                tab.set(i, r.forwarding);
+                return;
+            }
+        }
+    }
+
+    private boolean anyNode(Predicate<Node<K, V>> predicate) {
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            if (anyNode(tab, i, predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean anyNode(AtomicReferenceArray<Node<K, V>> tab, int i, Predicate<Node<K, V>> predicate) {
+        Node<K, V> e = tab.get(i);
+        if (e != null && e.hash == MOVED) {
+            AtomicReferenceArray<Node<K, V>> nextTable = ((ForwardingNode<K, V>) e).nextTable;
+            return anyNode(nextTable, i, predicate) || anyNode(nextTable, i + tab.length(), predicate);
+        }
+        for (; e != null; e = e.next) {
+            if (e.hash >= 0 && predicate.test(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Folds the high bits into the low ones and clears the sign bit
+    private static int spread(int hashCode) {
+        return (hashCode ^ (hashCode >>> 16)) & 0x7FFFFFFF;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private void checkKeyNotNull(K key) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+    }
+
+    private void checkValueNotNull(V value) {
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        anyNode(e -> {
+            sb.append(e).append(", ");
+            return false;
+        });
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentHashable<Integer, Integer> counts = new ConcurrentHashTable<>();
+
+        int threads = 8;
+        int perThread = 100_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    counts.merge(i % 1000, 1, Integer::sum);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        System.out.println("Count: " + counts.size());
+        System.out.println("GET 7: " + counts.get(7));
+        System.out.println("PutIfAbsent 7: " + counts.putIfAbsent(7, -1));
+        System.out.println("ComputeIfAbsent 5000: " + counts.computeIfAbsent(5000, k -> k * 2));
+        System.out.println("ContainsValue 10000: " + counts.containsValue(10000));
+        System.out.println("Removed value: " + counts.remove(5000));
+        System.out.println("Count: " + counts.size());
+    }
+}
@@ -0,0 +1,59 @@
+package data_structures.hash_table;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link Hashable} that is safe to share between threads without external
+ * locking. The compound operations below are performed atomically, so
+ * check-then-act sequences like {@code if (!containsKey(k)) put(k, v)} don't
+ * have to be guarded by the caller.
+ * <p>
+ * Neither keys nor values may be {@code null}.
+ */
+public interface ConcurrentHashable<K, V> extends Hashable<K, V> {
+
+    /**
+     * Associates the specified value with the specified key only if the key
+     * is not already associated with a value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with {@code key}, or
+     * {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key or value is null
+     */
+    V putIfAbsent(K key, V value);
+
+    /**
+     * If the specified key is not already associated with a value, attempts to
+     * compute its value using the given mapping function and enters it into
+     * this map unless {@code null}. The whole invocation is performed
+     * atomically, so the function is applied at most once per key. The
+     * function must be short and must not update this map.
+     *
+     * @param key             key with which the computed value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with the
+     * specified key, or {@code null} if the computed value is {@code null}
+     * @throws NullPointerException if the specified key or function is null
+     */
+    V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction);
+
+    /**
+     * If the specified key is not already associated with a value, associates
+     * it with the given value. Otherwise, replaces the value with the result of
+     * the given remapping function, or removes the mapping if the result is
+     * {@code null}. The whole invocation is performed atomically. The function
+     * must be short and must not update this map.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or
+     * {@code null} if none
+     * @throws NullPointerException if the specified key, value or function is null
+     */
+    V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction);
+
+}
@@ -0,0 +1,111 @@
+package data_structures.hash_table;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values of type {@code T} to and from a fixed number of bytes, so they
+ * can be stored in preallocated slots of a buffer. Two values must be equal if
+ * and only if their serialized forms are equal byte for byte, because tables
+ * that store serialized keys compare the bytes instead of calling
+ * {@code equals}.
+ * <p>
+ * Reads and writes use absolute positions and must not touch more than
+ * {@link #width()} bytes starting at the given offset.
+ */
+public interface FixedWidthSerializer<T> {
+
+    /**
+     * Returns the number of bytes every serialized value occupies.
+     *
+     * @return the number of bytes every serialized value occupies
+     */
+    int width();
+
+    /**
+     * Writes the value into the buffer starting at the given offset.
+     *
+     * @param value  the value to write
+     * @param target the buffer to write into
+     * @param offset the absolute position of the first byte
+     */
+    void write(T value, ByteBuffer target, int offset);
+
+    /**
+     * Reads a value that was written at the given offset.
+     *
+     * @param source the buffer to read from
+     * @param offset the absolute position of the first byte
+     * @return the value
+     */
+    T read(ByteBuffer source, int offset);
+
+    static FixedWidthSerializer<Integer> ints() {
+        return new FixedWidthSerializer<Integer>() {
+            @Override
+            public int width() {
+                return Integer.BYTES;
+            }
+
+            @Override
+            public void write(Integer value, ByteBuffer target, int offset) {
+                target.putInt(offset, value);
+            }
+
+            @Override
+            public Integer read(ByteBuffer source, int offset) {
+                return source.getInt(offset);
+            }
+        };
+    }
+
+    static FixedWidthSerializer<Long> longs() {
+        return new FixedWidthSerializer<Long>() {
+            @Override
+            public int width() {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void write(Long value, ByteBuffer target, int offset) {
+                target.putLong(offset, value);
+            }
+
+            @Override
+            public Long read(ByteBuffer source, int offset) {
+                return source.getLong(offset);
+            }
+        };
+    }
+
+    /**
+     * Serializer of byte arrays of exactly {@code width} bytes. Arrays don't
+     * override {@code equals}, but tables that compare serialized keys treat
+     * two arrays with the same content as the same key.
+     */
+    static FixedWidthSerializer<byte[]> bytes(int width) {
+        if (width <= 0) throw new IllegalArgumentException("Invalid width");
+        return new FixedWidthSerializer<byte[]>() {
+            @Override
+            public int width() {
+                return width;
+            }
+
+            @Override
+            public void write(byte[] value, ByteBuffer target, int offset) {
+                if (value.length != width) throw new IllegalArgumentException("Expected " + width + " bytes");
+                for (int i = 0; i < width; i++) {
+                    target.put(offset + i, value[i]);
+                }
+            }
+
+            @Override
+            public byte[] read(ByteBuffer source, int offset) {
+                byte[] value = new byte[width];
+                for (int i = 0; i < width; i++) {
+                    value[i] = source.get(offset + i);
+                }
+                return value;
+            }
+        };
+    }
+}
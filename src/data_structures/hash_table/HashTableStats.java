@@ -0,0 +1,164 @@
+package data_structures.hash_table;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the shape and the activity of a chained hash table.
+ * <p>
+ * The chain length histogram and the maximum chain length describe the bucket
+ * array at the time the snapshot was taken, and are always available. A few
+ * long chains next to mostly empty buckets mean the keys hash badly (a key
+ * like {@code TestKey}, with {@code val % 2} as hash code, fills two buckets
+ * whatever the capacity), while chains that are all moderately long mean the
+ * load factor is too high.
+ * <p>
+ * Hit/miss and resize counters are only collected while recording is on, see
+ * {@link #ENABLED_PROPERTY}, since they add a little work to every lookup.
+ */
+public final class HashTableStats {
+
+    /**
+     * System property that turns recording on for every chained table created
+     * afterwards, e.g. {@code -Ddata_structures.hash_table.stats=true}, so the
+     * code creating the tables doesn't need to change. Tables can also be
+     * switched on one by one with their {@code enableStats()} method.
+     */
+    public static final String ENABLED_PROPERTY = "data_structures.hash_table.stats";
+
+    /**
+     * Number of histogram buckets. The last one counts every chain of this
+     * length minus one or more.
+     */
+    public static final int HISTOGRAM_SIZE = 32;
+
+    private final int size;
+    private final int capacity;
+    private final long[] chainLengths;
+    private final int maxChainLength;
+    private final boolean recorded;
+    private final long hits;
+    private final long misses;
+    private final long resizes;
+    private final long resizeNanos;
+
+    HashTableStats(int size, int capacity, long[] chainLengths, int maxChainLength, Recorder recorder) {
+        this.size = size;
+        this.capacity = capacity;
+        this.chainLengths = chainLengths;
+        this.maxChainLength = maxChainLength;
+        this.recorded = recorder != null;
+        this.hits = recorded ? recorder.hits : 0;
+        this.misses = recorded ? recorder.misses : 0;
+        this.resizes = recorded ? recorder.resizes : 0;
+        this.resizeNanos = recorded ? recorder.resizeNanos : 0;
+    }
+
+    /**
+     * Counters a table updates while recording is on. Tables keep a null
+     * reference instead of a recorder while it's off.
+     */
+    static final class Recorder {
+        long hits;
+        long misses;
+        long resizes;
+        long resizeNanos;
+
+        static Recorder fromSystemProperty() {
+            return Boolean.getBoolean(ENABLED_PROPERTY) ? new Recorder() : null;
+        }
+
+        void lookup(boolean hit) {
+            if (hit) hits++;
+            else misses++;
+        }
+
+        void resized(long startNanos) {
+            resizes++;
+            resizeNanos += System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Accumulates a histogram of chain lengths, one bucket at a time.
+     */
+    static final class HistogramBuilder {
+        private final long[] histogram = new long[HISTOGRAM_SIZE];
+        private int max = 0;
+
+        void add(int chainLength) {
+            histogram[Math.min(chainLength, HISTOGRAM_SIZE - 1)]++;
+            max = Math.max(max, chainLength);
+        }
+
+        HashTableStats build(int size, int capacity, Recorder recorder) {
+            return new HashTableStats(size, capacity, histogram, max, recorder);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a copy of the histogram: element {@code i} is the number of
+     * buckets holding {@code i} entries, the last element counts the buckets
+     * holding {@code HISTOGRAM_SIZE - 1} entries or more.
+     */
+    public long[] chainLengthHistogram() {
+        return chainLengths.clone();
+    }
+
+    public int maxChainLength() {
+        return maxChainLength;
+    }
+
+    //Average number of entries in the buckets that aren't empty
+    public double averageChainLength() {
+        long used = capacity - chainLengths[0];
+        return used == 0 ? 0 : (double) size / used;
+    }
+
+    //Whether hits, misses and resizes were recorded
+    public boolean isRecorded() {
+        return recorded;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long resizes() {
+        return resizes;
+    }
+
+    public long resizeNanos() {
+        return resizeNanos;
+    }
+
+    @Override
+    public String toString() {
+        int last = chainLengths.length - 1;
+        while (last > 0 && chainLengths[last] == 0) last--;
+        StringBuilder sb = new StringBuilder();
+        sb.append("size=").append(size)
+                .append(", capacity=").append(capacity)
+                .append(", maxChainLength=").append(maxChainLength)
+                .append(", averageChainLength=").append(String.format("%.2f", averageChainLength()))
+                .append(", chainLengths=").append(Arrays.toString(Arrays.copyOf(chainLengths, last + 1)));
+        if (recorded) {
+            sb.append(", hits=").append(hits)
+                    .append(", misses=").append(misses)
+                    .append(", resizes=").append(resizes)
+                    .append(", resizeMillis=").append(String.format("%.3f", resizeNanos / 1e6));
+        }
+        return sb.toString();
+    }
+}
@@ -93,4 +93,49 @@ public interface Hashable<K, V> {
      */
     V remove(K key);
 
+    /**
+     * Copies all of the mappings from the given arrays to this map. The
+     * mapping at index {@code i} is {@code keys[i] => values[i]}; a key that
+     * occurs several times ends up mapped to its last value.
+     * <p>
+     * The default implementation calls {@link #put(Object, Object)} for every
+     * pair. Implementations are encouraged to size the table for the whole
+     * batch up front instead of growing it repeatedly.
+     *
+     * @param keys   keys with which the values are to be associated
+     * @param values values to be associated with the keys
+     * @throws IllegalArgumentException if the arrays have different lengths
+     * @throws NullPointerException     if a key or value is null and this map
+     *                                  does not permit null keys or values
+     */
+    default void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values have different lengths");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Looks up all of the given keys, storing the value mapped to
+     * {@code keys[i]}, or {@code null} if there is none, into {@code out[i]}.
+     * <p>
+     * The default implementation calls {@link #get(Object)} for every key.
+     *
+     * @param keys the keys whose associated values are to be returned
+     * @param out  the array the values are stored into
+     * @throws IllegalArgumentException if {@code out} is shorter than {@code keys}
+     * @throws NullPointerException     if a key is null and this map does not
+     *                                  permit null keys
+     */
+    default void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array is too short");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = get(keys[i]);
+        }
+    }
+
 }
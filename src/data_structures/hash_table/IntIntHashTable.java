@@ -0,0 +1,303 @@
+package data_structures.hash_table;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table specialized for {@code int} keys and values.
+ * <p>
+ * Keys and values live in two {@code int[]} arrays, so neither of them is
+ * ever boxed and a mapping costs no allocation at all. The key {@code 0}
+ * marks an empty slot; a mapping for the key {@code 0} itself is kept
+ * aside in a dedicated field.
+ * <p>
+ * Missing keys are reported with the value {@code 0} unless a default value
+ * is passed explicitly through {@link #getOrDefault(int, int)}.
+ */
+public class IntIntHashTable {
+
+    private static final int FREE_KEY = 0;
+    private static final int NO_VALUE = 0;
+
+    private static final int DEFAULT_CAPACITY = 4;
+    private static final double DEFAULT_LOAD_FACTOR = 0.5;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final double maxLoadFactor;
+    private int capacity;
+    private int mask;
+    private int threshold;
+    // Number of mappings stored in the arrays, the free key isn't counted
+    private int count = 0;
+
+    private int[] keys;
+    private int[] values;
+
+    private boolean hasFreeKey;
+    private int freeValue;
+
+    public IntIntHashTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public IntIntHashTable(int capacity) {
+        this(capacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public IntIntHashTable(int capacity, double maxLoadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+
+        if (maxLoadFactor <= 0 || maxLoadFactor >= 1) {
+            throw new IllegalArgumentException("Invalid maxLoadFactory");
+        }
+
+        this.maxLoadFactor = maxLoadFactor;
+        allocate(tableSizeFor(Math.max(capacity, DEFAULT_CAPACITY)));
+    }
+
+    public int size() {
+        return hasFreeKey ? count + 1 : count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        Arrays.fill(values, NO_VALUE);
+        hasFreeKey = false;
+        freeValue = NO_VALUE;
+        count = 0;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) return hasFreeKey;
+        return indexOf(key) >= 0;
+    }
+
+    public boolean containsValue(int value) {
+        if (hasFreeKey && freeValue == value) return true;
+        for (int i = 0; i < capacity; i++) {
+            if (keys[i] != FREE_KEY && values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int get(int key) {
+        return getOrDefault(key, NO_VALUE);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == FREE_KEY) return hasFreeKey ? freeValue : defaultValue;
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @return the previous value associated with the key, or {@code 0}
+     * if there was no mapping for the key
+     */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int old = hasFreeKey ? freeValue : NO_VALUE;
+            hasFreeKey = true;
+            freeValue = value;
+            return old;
+        }
+
+        int index = normalizeIndex(key);
+        for (int k = keys[index]; k != FREE_KEY; k = keys[index]) {
+            if (k == key) {
+                int old = values[index];
+                values[index] = value;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+
+        insertAt(index, key, value);
+        return NO_VALUE;
+    }
+
+    /**
+     * Adds the increment to the value associated with the key. A missing
+     * key is treated as if it was mapped to {@code 0}, which makes the
+     * method a natural fit for counting.
+     *
+     * @return the previous value associated with the key, or {@code 0}
+     * if there was no mapping for the key
+     */
+    public int addTo(int key, int increment) {
+        if (key == FREE_KEY) {
+            int old = hasFreeKey ? freeValue : NO_VALUE;
+            hasFreeKey = true;
+            freeValue = old + increment;
+            return old;
+        }
+
+        int index = normalizeIndex(key);
+        for (int k = keys[index]; k != FREE_KEY; k = keys[index]) {
+            if (k == key) {
+                int old = values[index];
+                values[index] = old + increment;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+
+        insertAt(index, key, increment);
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @return the previous value associated with the key, or {@code 0}
+     * if there was no mapping for the key
+     */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            int old = hasFreeKey ? freeValue : NO_VALUE;
+            hasFreeKey = false;
+            freeValue = NO_VALUE;
+            return old;
+        }
+
+        int index = indexOf(key);
+        if (index < 0) {
+            return NO_VALUE;
+        }
+
+        int oldValue = values[index];
+        shiftBack(index);
+        count--;
+        return oldValue;
+    }
+
+    private void insertAt(int index, int key, int value) {
+        keys[index] = key;
+        values[index] = value;
+        if (++count > threshold) {
+            resizeTable(capacity * 2);
+        }
+    }
+
+    // Backward shift deletion, see OpenAddressingHashTable#shiftBack
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            int k = keys[i];
+            if (k == FREE_KEY) {
+                break;
+            }
+            int home = normalizeIndex(k);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = FREE_KEY;
+        values[gap] = NO_VALUE;
+    }
+
+    private int indexOf(int key) {
+        int index = normalizeIndex(key);
+        for (int k = keys[index]; k != FREE_KEY; k = keys[index]) {
+            if (k == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resizeTable(int capacity) {
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Hash table is too large");
+        }
+
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int index = normalizeIndex(k);
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = k;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        mask = capacity - 1;
+        threshold = Math.min((int) (capacity * maxLoadFactor), capacity - 1);
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Integer keys are frequently sequential ids, so they are scrambled by a
+     * multiplication with the golden ratio constant before masking.
+     */
+    private int normalizeIndex(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        if (hasFreeKey) {
+            sb.append(FREE_KEY).append(" => ").append(freeValue).append(", ");
+        }
+        for (int i = 0; i < capacity; i++) {
+            if (keys[i] != FREE_KEY) {
+                sb.append(keys[i]).append(" => ").append(values[i]).append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        IntIntHashTable counts = new IntIntHashTable();
+
+        int[] ids = {3, 0, 7, 3, 3, 0, 42, 7, -1};
+        for (int id : ids) {
+            counts.addTo(id, 1);
+        }
+
+        System.out.println(counts);
+
+        System.out.println("Count: " + counts.size());
+        System.out.println("GET 3: " + counts.get(3));
+        System.out.println("GET 5 or -1: " + counts.getOrDefault(5, -1));
+        System.out.println("Contains key 0: " + counts.containsKey(0));
+        System.out.println("Removed value: " + counts.remove(7));
+        System.out.println("Count: " + counts.size());
+
+        System.out.println(counts);
+    }
+}
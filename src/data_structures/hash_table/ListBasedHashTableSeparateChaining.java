@@ -6,40 +6,48 @@ import data_structures.hash_table.test_data.TestValue;
 import java.util.*;
 
 
+// Every bucket is a small inline list: an Object[] holding the pairs of the
+// bucket back to back (key0, value0, key1, value1, ...) which grows when it
+// fills up. A mapping costs two array slots instead of an entry object plus
+// a list node, and lookups walk a single array without allocating iterators.
+// The hash code of every key is kept in a parallel int[] per bucket, so a
+// lookup only calls equals on keys with the same hash code and a resize
+// never calls hashCode again.
+// Buckets are never treeified. The seeded bucket index spreads keys whose hash
+// codes differ, but keys with equal hash codes, such as strings crafted from
+// "Aa" and "BB" blocks, all end up in one bucket that every lookup scans, so
+// the table is not protected against that attack (see HashFloodingBenchmark).
 @SuppressWarnings("unchecked")
-public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
+public class ListBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>, Iterable<K> {
 
-    private static class Entry<K, V> {
-
-        int hash;
-        K key;
-        V value;
-
-        public Entry(K key, V value) {
-            this.key = key;
-            this.value = value;
-            this.hash = key.hashCode();
-        }
-
-        // We are not overriding the Object equals method
-        // No casting is required with this method.
-        public boolean equals(Entry<K, V> other) {
-            if (hash != other.hash) return false;
-            return key.equals(other.key);
-        }
-
-        @Override
-        public String toString() {
-            return key + " => " + value;
-        }
-    }
+    // Number of pairs a bucket can hold when it's created
+    private static final int INITIAL_BUCKET_PAIRS = 2;
 
     private static final int DEFAULT_CAPACITY = 3;
     private static final double DEFAULT_LOAD_FACTOR = 0.75;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    // See shrinkIfSparse. After a halving the table holds less than half of its
+    // new threshold, far from the next doubling, so put/remove around one size
+    // doesn't resize every time
+    private static final int SHRINK_RATIO = 4;
 
     private final double maxLoadFactor;
+    // Capacity is kept a power of two and buckets are selected with a mask
+    private final boolean powerOfTwoCapacity;
+    // Floor for shrinkIfSparse and compact, and what clear goes back to
+    private final int initialCapacity;
     private int capacity, threshold, size = 0;
-    private LinkedList<Entry<K, V>>[] table;
+    // Drawn once per table, see normalizeIndex
+    private final int seed = SeededHash.newSeed();
+    // table[i] holds the pairs of bucket i, hashes[i] the hash codes of their keys
+    // in the same order and bucketSizes[i] their number
+    private Object[][] table;
+    private int[][] hashes;
+    private int[] bucketSizes;
+    // Value => number of pairs holding it, null until enableValueIndex is called
+    private Map<V, Integer> valueIndex;
+    // Hit/miss and resize counters, null unless recording is on, see HashTableStats
+    private HashTableStats.Recorder stats = HashTableStats.Recorder.fromSystemProperty();
 
     public ListBasedHashTableSeparateChaining() {
         this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
@@ -49,50 +57,142 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
         this(capacity, DEFAULT_LOAD_FACTOR);
     }
 
-    // Designated constructor
     public ListBasedHashTableSeparateChaining(int capacity, double maxLoadFactor) {
+        this(capacity, maxLoadFactor, false);
+    }
+
+    // Designated constructor
+    public ListBasedHashTableSeparateChaining(int capacity, double maxLoadFactor, boolean powerOfTwoCapacity) {
         if (capacity < 0) throw new IllegalArgumentException("Illegal capacity");
         if (maxLoadFactor <= 0 || Double.isNaN(maxLoadFactor) || Double.isInfinite(maxLoadFactor))
             throw new IllegalArgumentException("Illegal maxLoadFactor");
         this.maxLoadFactor = maxLoadFactor;
+        this.powerOfTwoCapacity = powerOfTwoCapacity;
         this.capacity = Math.max(DEFAULT_CAPACITY, capacity);
+        if (powerOfTwoCapacity) this.capacity = tableSizeFor(this.capacity);
+        initialCapacity = this.capacity;
         threshold = (int) (this.capacity * maxLoadFactor);
-        table = new LinkedList[this.capacity];
+        table = new Object[this.capacity][];
+        hashes = new int[this.capacity][];
+        bucketSizes = new int[this.capacity];
     }
 
     // Returns the number of elements currently inside the hash-table
+    @Override
     public int size() {
         return size;
     }
 
     // Returns true/false depending on whether the hash-table is empty
+    @Override
     public boolean isEmpty() {
         return size == 0;
     }
 
     // Converts a hash value to an index. Essentially, this strips the
-    // negative sign and places the hash value in the domain [0, capacity)
+    // negative sign and places the hash value in the domain [0, capacity).
+    // In the power of two mode the division is replaced with a mask.
+    // The hash is scrambled with the random seed of the table first, so keys
+    // flooding a single bucket can't be prepared in advance. Keys with equal
+    // hash codes still share a bucket whatever the seed
     private int normalizeIndex(int keyHash) {
-        return (keyHash & 0x7FFFFFFF) % capacity;
+        int h = SeededHash.scramble(keyHash, seed);
+        if (powerOfTwoCapacity) return h & (capacity - 1);
+        return (h & 0x7FFFFFFF) % capacity;
+    }
+
+    // Returns the smallest power of two that is greater or equal to capacity
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) return MAXIMUM_CAPACITY;
+        return Integer.highestOneBit(capacity - 1) << 1;
     }
 
-    // Clears all the contents of the hash-table
+    // Clears all the contents of the hash-table and goes back to the initial capacity
+    @Override
     public void clear() {
-        Arrays.fill(table, null);
+        capacity = initialCapacity;
+        threshold = (int) (capacity * maxLoadFactor);
+        table = new Object[capacity][];
+        hashes = new int[capacity][];
+        bucketSizes = new int[capacity];
         size = 0;
+        if (valueIndex != null) valueIndex.clear();
+    }
+
+    // Shrinks the table to the smallest capacity that holds the current entries
+    // (but not below the initial one) and rebuilds the buckets, which also frees
+    // bucket arrays that grew for entries removed since
+    public void compact() {
+        int newCapacity = (int) Math.min(MAXIMUM_CAPACITY, (long) (size / maxLoadFactor) + 1);
+        newCapacity = Math.max(initialCapacity, newCapacity);
+        if (powerOfTwoCapacity) newCapacity = tableSizeFor(newCapacity);
+        resizeTable(newCapacity);
+    }
+
+    // Halves the table when it has become sparse after removals
+    private void shrinkIfSparse() {
+        if (capacity > initialCapacity && size < threshold / SHRINK_RATIO)
+            resizeTable(Math.max(initialCapacity, capacity / 2));
     }
 
+    @Override
     public boolean containsKey(K key) {
         return hasKey(key);
     }
 
+    // Starts maintaining a reverse index of the values, so containsValue becomes
+    // a single hash lookup instead of a scan over every bucket. The index is built
+    // from the current content and kept in sync by put, remove and clear. It costs
+    // a java.util.HashMap entry per distinct value plus an extra lookup per update,
+    // and needs values with hashCode consistent with equals
+    public void enableValueIndex() {
+        if (valueIndex != null) return;
+        valueIndex = new HashMap<>();
+        for (V value : values()) valueIndex.merge(value, 1, Integer::sum);
+    }
+
+    // Keeps the reverse value index in sync. HashMap permits null keys, so null values
+    // are indexed too, `removed`/`added` tell whether there is a value to process
+    private void reindex(boolean removed, V oldValue, boolean added, V newValue) {
+        if (valueIndex == null) return;
+        if (removed) valueIndex.computeIfPresent(oldValue, (v, n) -> n == 1 ? null : n - 1);
+        if (added) valueIndex.merge(newValue, 1, Integer::sum);
+    }
+
+    // Starts counting hits, misses and resizes. Recording can also be turned on
+    // for all tables with the HashTableStats.ENABLED_PROPERTY system property
+    public void enableStats() {
+        if (stats == null) stats = new HashTableStats.Recorder();
+    }
+
+    // Returns a snapshot of the bucket sizes and, if recording is on, of the counters
+    public HashTableStats stats() {
+        HashTableStats.HistogramBuilder histogram = new HashTableStats.HistogramBuilder();
+        for (int i = 0; i < capacity; i++) histogram.add(bucketSizes[i]);
+        return histogram.build(size, capacity, stats);
+    }
+
+    // Returns true/false depending on whether any key is mapped to the value
+    @Override
+    public boolean containsValue(V value) {
+        if (valueIndex != null) return valueIndex.containsKey(value);
+        for (int i = 0; i < capacity; i++) {
+            Object[] bucket = table[i];
+            for (int j = 1; j < bucketSizes[i] * 2; j += 2) if (Objects.equals(bucket[j], value)) return true;
+        }
+        return false;
+    }
+
     // Returns true/false depending on whether a key is in the hash table
     public boolean hasKey(K key) {
-        int bucketIndex = normalizeIndex(key.hashCode());
-        return bucketSeekEntry(bucketIndex, key) != null;
+        int keyHash = key.hashCode();
+        boolean found = bucketSeekEntry(normalizeIndex(keyHash), keyHash, key) >= 0;
+        if (stats != null) stats.lookup(found);
+        return found;
     }
 
     // Insert, put and add all place a value in the hash-table
+    @Override
     public V put(K key, V value) {
         return insert(key, value);
     }
@@ -104,107 +204,210 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
     public V insert(K key, V value) {
 
         if (key == null) throw new IllegalArgumentException("Null key");
-        Entry<K, V> newEntry = new Entry<>(key, value);
-        int bucketIndex = normalizeIndex(newEntry.hash);
-        return bucketInsertEntry(bucketIndex, newEntry);
+        int keyHash = key.hashCode();
+        return bucketInsertEntry(normalizeIndex(keyHash), keyHash, key, value);
     }
 
     // Gets a key's values from the map and returns the value.
     // NOTE: returns null if the value is null AND also returns
     // null if the key does not exists, so watch out..
+    @Override
     public V get(K key) {
 
         if (key == null) return null;
-        int bucketIndex = normalizeIndex(key.hashCode());
-        Entry<K, V> entry = bucketSeekEntry(bucketIndex, key);
-        if (entry != null) return entry.value;
+        int keyHash = key.hashCode();
+        int bucketIndex = normalizeIndex(keyHash);
+        int slot = bucketSeekEntry(bucketIndex, keyHash, key);
+        if (stats != null) stats.lookup(slot >= 0);
+        if (slot >= 0) return (V) table[bucketIndex][slot + 1];
         return null;
     }
 
     // Removes a key from the map and returns the value.
     // NOTE: returns null if the value is null AND also returns
     // null if the key does not exists.
+    @Override
     public V remove(K key) {
 
         if (key == null) return null;
-        int bucketIndex = normalizeIndex(key.hashCode());
-        return bucketRemoveEntry(bucketIndex, key);
+        int keyHash = key.hashCode();
+        return bucketRemoveEntry(normalizeIndex(keyHash), keyHash, key);
+    }
+
+    // Places all the pairs in the hash-table. The table is grown at most once
+    // for the whole batch and all the bucket indices are computed up front
+    @Override
+    public void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Keys and values have different lengths");
+        int n = keys.length;
+        for (K key : keys) if (key == null) throw new IllegalArgumentException("Null key");
+
+        ensureCapacity(size + n);
+
+        int[] keyHashes = new int[n];
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            keyHashes[i] = keys[i].hashCode();
+            indices[i] = normalizeIndex(keyHashes[i]);
+        }
+        for (int i = 0; i < n; i++) bucketInsertEntry(indices[i], keyHashes[i], keys[i], values[i]);
+    }
+
+    // Looks all the keys up. All the bucket indices and then all the buckets
+    // are loaded in separate passes before any of them is searched, so the CPU
+    // can overlap the cache misses of different keys
+    @Override
+    public void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length) throw new IllegalArgumentException("Output array is too short");
+        int n = keys.length;
+
+        int[] keyHashes = new int[n];
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (keys[i] == null) {
+                indices[i] = -1;
+                continue;
+            }
+            keyHashes[i] = keys[i].hashCode();
+            indices[i] = normalizeIndex(keyHashes[i]);
+        }
+
+        Object[][] buckets = new Object[n][];
+        int[][] bucketHashes = new int[n][];
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (indices[i] < 0) continue;
+            buckets[i] = table[indices[i]];
+            bucketHashes[i] = hashes[indices[i]];
+            sizes[i] = bucketSizes[indices[i]];
+        }
+
+        for (int i = 0; i < n; i++) {
+            int slot = seekEntry(buckets[i], bucketHashes[i], sizes[i], keyHashes[i], keys[i]);
+            if (stats != null) stats.lookup(slot >= 0);
+            out[i] = slot >= 0 ? (V) buckets[i][slot + 1] : null;
+        }
     }
 
-    // Removes an entry from a given bucket if it exists
-    private V bucketRemoveEntry(int bucketIndex, K key) {
+    // Grows the table once, so it can hold `expected` entries without further resizes
+    private void ensureCapacity(int expected) {
+        if (expected <= threshold) return;
+        int newCapacity = capacity;
+        while ((int) (newCapacity * maxLoadFactor) < expected && newCapacity < MAXIMUM_CAPACITY) newCapacity *= 2;
+        resizeTable(newCapacity);
+    }
 
-        Entry<K, V> entry = bucketSeekEntry(bucketIndex, key);
-        if (entry != null) {
-            LinkedList<Entry<K, V>> links = table[bucketIndex];
-            links.remove(entry);
-            --size;
-            return entry.value;
-        } else return null;
+    // Removes an entry from a given bucket if it exists. The last pair
+    // of the bucket is moved into the freed slots
+    private V bucketRemoveEntry(int bucketIndex, int keyHash, K key) {
+
+        int slot = bucketSeekEntry(bucketIndex, keyHash, key);
+        if (slot < 0) return null;
+
+        Object[] bucket = table[bucketIndex];
+        int[] bucketHashes = hashes[bucketIndex];
+        V value = (V) bucket[slot + 1];
+        int last = --bucketSizes[bucketIndex] * 2;
+        bucket[slot] = bucket[last];
+        bucket[slot + 1] = bucket[last + 1];
+        bucketHashes[slot / 2] = bucketHashes[last / 2];
+        // Avoid memory leak. Help the GC
+        bucket[last] = null;
+        bucket[last + 1] = null;
+
+        --size;
+        reindex(true, value, false, null);
+        shrinkIfSparse();
+        return value;
     }
 
     // Inserts an entry in a given bucket only if the entry does not already
     // exist in the given bucket, but if it does then update the entry value
-    private V bucketInsertEntry(int bucketIndex, Entry<K, V> entry) {
+    private V bucketInsertEntry(int bucketIndex, int keyHash, K key, V value) {
 
-        LinkedList<Entry<K, V>> bucket = table[bucketIndex];
-        if (bucket == null) table[bucketIndex] = bucket = new LinkedList<>();
-
-        Entry<K, V> existentEntry = bucketSeekEntry(bucketIndex, entry.key);
-        if (existentEntry == null) {
-            bucket.add(entry);
-            if (++size > threshold) resizeTable();
+        int slot = bucketSeekEntry(bucketIndex, keyHash, key);
+        if (slot < 0) {
+            appendPair(table, hashes, bucketSizes, bucketIndex, keyHash, key, value);
+            if (++size > threshold) resizeTable(capacity * 2);
+            reindex(false, null, true, value);
             return null; // Use null to indicate that there was no previous entry
         } else {
-            V oldVal = existentEntry.value;
-            existentEntry.value = entry.value;
+            Object[] bucket = table[bucketIndex];
+            V oldVal = (V) bucket[slot + 1];
+            bucket[slot + 1] = value;
+            reindex(true, oldVal, true, value);
             return oldVal;
         }
     }
 
-    // Finds and returns a particular entry in a given bucket if it exists, returns null otherwise
-    private Entry<K, V> bucketSeekEntry(int bucketIndex, K key) {
+    // Appends a pair and its key's hash to a bucket, creating or growing the
+    // bucket arrays when they're full
+    private static void appendPair(Object[][] table, int[][] hashes, int[] bucketSizes, int bucketIndex,
+                                   int keyHash, Object key, Object value) {
+        Object[] bucket = table[bucketIndex];
+        int[] bucketHashes = hashes[bucketIndex];
+        int pair = bucketSizes[bucketIndex];
+        if (bucket == null) {
+            table[bucketIndex] = bucket = new Object[INITIAL_BUCKET_PAIRS * 2];
+            hashes[bucketIndex] = bucketHashes = new int[INITIAL_BUCKET_PAIRS];
+        } else if (pair * 2 == bucket.length) {
+            table[bucketIndex] = bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            hashes[bucketIndex] = bucketHashes = Arrays.copyOf(bucketHashes, bucketHashes.length * 2);
+        }
+        bucket[pair * 2] = key;
+        bucket[pair * 2 + 1] = value;
+        bucketHashes[pair] = keyHash;
+        bucketSizes[bucketIndex]++;
+    }
 
-        if (key == null) return null;
-        LinkedList<Entry<K, V>> bucket = table[bucketIndex];
-        if (bucket == null) return null;
-        for (Entry<K, V> entry : bucket) if (entry.key.equals(key)) return entry;
-        return null;
+    // Finds the key in a given bucket and returns the array slot holding it, -1 otherwise
+    private int bucketSeekEntry(int bucketIndex, int keyHash, K key) {
+
+        return seekEntry(table[bucketIndex], hashes[bucketIndex], bucketSizes[bucketIndex], keyHash, key);
+    }
+
+    // Only keys with the same hash code are compared with equals
+    private int seekEntry(Object[] bucket, int[] bucketHashes, int pairs, int keyHash, K key) {
+        if (key == null) return -1;
+        for (int pair = 0; pair < pairs; pair++)
+            if (bucketHashes[pair] == keyHash && key.equals(bucket[pair * 2])) return pair * 2;
+        return -1;
     }
 
     // Resizes the internal table holding buckets of entries
-    private void resizeTable() {
+    private void resizeTable(int newCapacity) {
 
-        capacity *= 2;
+        long start = System.nanoTime();
+        capacity = newCapacity;
         threshold = (int) (capacity * maxLoadFactor);
 
-        LinkedList<Entry<K, V>>[] newTable = new LinkedList[capacity];
+        Object[][] newTable = new Object[capacity][];
+        int[][] newHashes = new int[capacity][];
+        int[] newSizes = new int[capacity];
 
         for (int i = 0; i < table.length; i++) {
-            if (table[i] != null) {
-
-                for (Entry<K, V> entry : table[i]) {
-                    int bucketIndex = normalizeIndex(entry.hash);
-                    LinkedList<Entry<K, V>> bucket = newTable[bucketIndex];
-                    if (bucket == null) newTable[bucketIndex] = bucket = new LinkedList<>();
-                    bucket.add(entry);
-                }
-
-                // Avoid memory leak. Help the GC
-                table[i].clear();
-                table[i] = null;
+            Object[] bucket = table[i];
+            int[] bucketHashes = hashes[i];
+            for (int pair = 0; pair < bucketSizes[i]; pair++) {
+                int keyHash = bucketHashes[pair];
+                appendPair(newTable, newHashes, newSizes, normalizeIndex(keyHash), keyHash,
+                        bucket[pair * 2], bucket[pair * 2 + 1]);
             }
         }
 
         table = newTable;
+        hashes = newHashes;
+        bucketSizes = newSizes;
+        if (stats != null) stats.resized(start);
     }
 
     // Returns the data_structures.list of keys found within the hash table
     public List<K> keys() {
 
         List<K> keys = new ArrayList<>(size());
-        for (LinkedList<Entry<K, V>> bucket : table)
-            if (bucket != null) for (Entry<K, V> entry : bucket) keys.add(entry.key);
+        for (int i = 0; i < capacity; i++)
+            for (int slot = 0; slot < bucketSizes[i] * 2; slot += 2) keys.add((K) table[i][slot]);
         return keys;
     }
 
@@ -212,8 +415,8 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
     public List<V> values() {
 
         List<V> values = new ArrayList<>(size());
-        for (LinkedList<Entry<K, V>> bucket : table)
-            if (bucket != null) for (Entry<K, V> entry : bucket) values.add(entry.value);
+        for (int i = 0; i < capacity; i++)
+            for (int slot = 1; slot < bucketSizes[i] * 2; slot += 2) values.add((V) table[i][slot]);
         return values;
     }
 
@@ -221,10 +424,12 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
     @Override
     public java.util.Iterator<K> iterator() {
         final int elementCount = size();
+        final Object[][] buckets = table;
+        final int[] sizes = bucketSizes;
         return new java.util.Iterator<K>() {
 
             int bucketIndex = 0;
-            java.util.Iterator<Entry<K, V>> bucketIter = (table[0] == null) ? null : table[0].iterator();
+            int slot = 0;
 
             @Override
             public boolean hasNext() {
@@ -232,28 +437,20 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
                 // An item was added or removed while iterating
                 if (elementCount != size) throw new java.util.ConcurrentModificationException();
 
-                // No iterator or the current iterator is empty
-                if (bucketIter == null || !bucketIter.hasNext()) {
-
-                    // Search next buckets until a valid iterator is found
-                    while (++bucketIndex < capacity) {
-                        if (table[bucketIndex] != null) {
-
-                            // Make sure this iterator actually has elements -_-
-                            java.util.Iterator<Entry<K, V>> nextIter = table[bucketIndex].iterator();
-                            if (nextIter.hasNext()) {
-                                bucketIter = nextIter;
-                                break;
-                            }
-                        }
-                    }
+                // Skip the exhausted and empty buckets
+                while (bucketIndex < buckets.length && slot >= sizes[bucketIndex] * 2) {
+                    bucketIndex++;
+                    slot = 0;
                 }
-                return bucketIndex < capacity;
+                return bucketIndex < buckets.length;
             }
 
             @Override
             public K next() {
-                return bucketIter.next().key;
+                if (!hasNext()) throw new NoSuchElementException();
+                K key = (K) buckets[bucketIndex][slot];
+                slot += 2;
+                return key;
             }
 
             @Override
@@ -271,8 +468,13 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
         for (int i = 0; i < capacity; i++) {
-            if (table[i] == null) continue;
-            sb.append(table[i].toString()).append(", ");
+            if (bucketSizes[i] == 0) continue;
+            sb.append("[");
+            for (int slot = 0; slot < bucketSizes[i] * 2; slot += 2) {
+                if (slot > 0) sb.append(", ");
+                sb.append(table[i][slot]).append(" => ").append(table[i][slot + 1]);
+            }
+            sb.append("], ");
         }
         sb.append("}");
         return sb.toString();
@@ -295,6 +497,7 @@ public class ListBasedHashTableSeparateChaining<K, V> implements Iterable<K> {
         System.out.println("Count: " + custom.size());
 
         System.out.println(custom);
+        System.out.println("Stats: " + custom.stats());
 
     }
 }
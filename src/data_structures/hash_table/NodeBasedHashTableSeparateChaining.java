@@ -3,22 +3,44 @@ package data_structures.hash_table;
 import data_structures.hash_table.test_data.TestKey;
 import data_structures.hash_table.test_data.TestValue;
 
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 @SuppressWarnings("unchecked")
 public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>, Iterable<V> {
 
     private static class Entry<K, V> {
+        //Hash code of the key, cached so that resizes don't recompute it and
+        //chain scans can skip entries without calling equals
         final int hash;
         K key;
         V value;
         Entry<K, V> next;
 
-        public Entry(K key, V value, Entry<K, V> next) {
+        public Entry(int hash, K key, V value, Entry<K, V> next) {
+            this.hash = hash;
             this.key = key;
             this.value = value;
             this.next = next;
-            hash = value.hashCode();
+        }
+
+        Entry(int hash) {
+            this.hash = hash;
         }
 
         @Override
@@ -34,16 +56,313 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
         }
     }
 
+    /**
+     * Head of a bucket that was converted into a red-black tree (a left-leaning
+     * one, as described by Sedgewick). It is stored in the table instead of a
+     * regular chain head and is recognised with {@code instanceof}.
+     * <p>
+     * Nodes are ordered by hash, then by class name, then by {@code compareTo}
+     * when both keys are of the same {@link Comparable} class, then by insertion
+     * sequence. The last
+     * component makes the order total, so every node has a unique position even
+     * if keys are not comparable. Lookups of non comparable keys with equal
+     * hashes have to search both subtrees, so the O(log n) bound holds for
+     * distinct hashes or comparable keys, the same trade-off as
+     * {@code java.util.HashMap} makes.
+     */
+    private static final class TreeBin<K, V> extends Entry<K, V> {
+
+        private static final boolean RED = true;
+        private static final boolean BLACK = false;
+
+        //Whether a class is declared as "class C implements Comparable<C>", like
+        //HashMap.comparableClassFor. A key implementing Comparable of some other
+        //type would throw ClassCastException when compared to its own class.
+        //Reflection runs once per class, not on every comparison of a tree walk
+        private static final ClassValue<Boolean> COMPARABLE_TO_ITSELF = new ClassValue<>() {
+            @Override
+            protected Boolean computeValue(Class<?> c) {
+                if (c == String.class) {
+                    return true;
+                }
+                for (Type t : c.getGenericInterfaces()) {
+                    if (t instanceof ParameterizedType) {
+                        ParameterizedType p = (ParameterizedType) t;
+                        Type[] args = p.getActualTypeArguments();
+                        if (p.getRawType() == Comparable.class && args.length == 1 && args[0] == c) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+        };
+
+        TreeNode<K, V> root;
+        int size;
+        private long nextSeq;
+
+        TreeBin() {
+            super(0);
+        }
+
+        TreeNode<K, V> find(int hash, Object key) {
+            return find(root, hash, key);
+        }
+
+        private TreeNode<K, V> find(TreeNode<K, V> x, int hash, Object key) {
+            while (x != null) {
+                if (hash < x.hash) {
+                    x = x.left;
+                } else if (hash > x.hash) {
+                    x = x.right;
+                } else if (key.equals(x.key)) {
+                    return x;
+                } else {
+                    int cmp = compareComparables(key, x.key);
+                    if (cmp < 0) {
+                        x = x.left;
+                    } else if (cmp > 0) {
+                        x = x.right;
+                    } else {
+                        //Nothing tells which side the key is on, search both
+                        TreeNode<K, V> found = find(x.right, hash, key);
+                        if (found != null) return found;
+                        x = x.left;
+                    }
+                }
+            }
+            return null;
+        }
+
+        void insert(int hash, K key, V value) {
+            TreeNode<K, V> node = new TreeNode<>(hash, key, value, nextSeq++);
+            root = insert(root, node);
+            root.color = BLACK;
+            size++;
+        }
+
+        private TreeNode<K, V> insert(TreeNode<K, V> h, TreeNode<K, V> node) {
+            if (h == null) return node;
+
+            if (compareNodes(node, h) < 0) {
+                h.left = insert(h.left, node);
+            } else {
+                h.right = insert(h.right, node);
+            }
+
+            if (isRed(h.right) && !isRed(h.left)) h = rotateLeft(h);
+            if (isRed(h.left) && isRed(h.left.left)) h = rotateRight(h);
+            if (isRed(h.left) && isRed(h.right)) flipColors(h);
+            return h;
+        }
+
+        //The node must belong to this tree
+        void delete(TreeNode<K, V> node) {
+            if (!isRed(root.left) && !isRed(root.right)) root.color = RED;
+            root = delete(root, node);
+            if (root != null) root.color = BLACK;
+            size--;
+        }
+
+        private TreeNode<K, V> delete(TreeNode<K, V> h, TreeNode<K, V> node) {
+            if (compareNodes(node, h) < 0) {
+                if (!isRed(h.left) && !isRed(h.left.left)) h = moveRedLeft(h);
+                h.left = delete(h.left, node);
+            } else {
+                if (isRed(h.left)) h = rotateRight(h);
+                if (compareNodes(node, h) == 0 && h.right == null) return null;
+                if (!isRed(h.right) && !isRed(h.right.left)) h = moveRedRight(h);
+                if (compareNodes(node, h) == 0) {
+                    //Replace the node content with its successor
+                    TreeNode<K, V> min = h.right;
+                    while (min.left != null) min = min.left;
+                    h.copyFrom(min);
+                    h.right = deleteMin(h.right);
+                } else {
+                    h.right = delete(h.right, node);
+                }
+            }
+            return balance(h);
+        }
+
+        private TreeNode<K, V> deleteMin(TreeNode<K, V> h) {
+            if (h.left == null) return null;
+            if (!isRed(h.left) && !isRed(h.left.left)) h = moveRedLeft(h);
+            h.left = deleteMin(h.left);
+            return balance(h);
+        }
+
+        //Converts the tree back to a regular chain
+        Entry<K, V> toChain() {
+            Entry<K, V>[] head = (Entry<K, V>[]) new Entry[1];
+            forEach(root, n -> head[0] = new Entry<>(n.hash, n.key, n.value, head[0]));
+            return head[0];
+        }
+
+        //In-order traversal
+        void forEach(java.util.function.Consumer<TreeNode<K, V>> action) {
+            forEach(root, action);
+        }
+
+        private void forEach(TreeNode<K, V> x, java.util.function.Consumer<TreeNode<K, V>> action) {
+            if (x == null) return;
+            forEach(x.left, action);
+            action.accept(x);
+            forEach(x.right, action);
+        }
+
+        private static int compareNodes(TreeNode<?, ?> a, TreeNode<?, ?> b) {
+            if (a.hash != b.hash) return a.hash < b.hash ? -1 : 1;
+            int cmp = compareComparables(a.key, b.key);
+            if (cmp != 0) return cmp;
+            return Long.compare(a.seq, b.seq);
+        }
+
+        //Keys of different classes are ordered by class name, keys of the same
+        //class C by compareTo if C implements Comparable<C>. Returns 0 if nothing
+        //else tells the keys apart
+        private static int compareComparables(Object a, Object b) {
+            Class<?> ca = a.getClass();
+            Class<?> cb = b.getClass();
+            if (ca != cb) {
+                return ca.getName().compareTo(cb.getName());
+            }
+            if (COMPARABLE_TO_ITSELF.get(ca)) {
+                return ((Comparable<Object>) a).compareTo(b);
+            }
+            return 0;
+        }
+
+        private static boolean isRed(TreeNode<?, ?> x) {
+            return x != null && x.color == RED;
+        }
+
+        private static <K, V> TreeNode<K, V> rotateLeft(TreeNode<K, V> h) {
+            TreeNode<K, V> x = h.right;
+            h.right = x.left;
+            x.left = h;
+            x.color = h.color;
+            h.color = RED;
+            return x;
+        }
+
+        private static <K, V> TreeNode<K, V> rotateRight(TreeNode<K, V> h) {
+            TreeNode<K, V> x = h.left;
+            h.left = x.right;
+            x.right = h;
+            x.color = h.color;
+            h.color = RED;
+            return x;
+        }
+
+        private static void flipColors(TreeNode<?, ?> h) {
+            h.color = !h.color;
+            h.left.color = !h.left.color;
+            h.right.color = !h.right.color;
+        }
+
+        private static <K, V> TreeNode<K, V> moveRedLeft(TreeNode<K, V> h) {
+            flipColors(h);
+            if (isRed(h.right.left)) {
+                h.right = rotateRight(h.right);
+                h = rotateLeft(h);
+                flipColors(h);
+            }
+            return h;
+        }
+
+        private static <K, V> TreeNode<K, V> moveRedRight(TreeNode<K, V> h) {
+            flipColors(h);
+            if (isRed(h.left.left)) {
+                h = rotateRight(h);
+                flipColors(h);
+            }
+            return h;
+        }
+
+        private static <K, V> TreeNode<K, V> balance(TreeNode<K, V> h) {
+            if (isRed(h.right) && !isRed(h.left)) h = rotateLeft(h);
+            if (isRed(h.left) && isRed(h.left.left)) h = rotateRight(h);
+            if (isRed(h.left) && isRed(h.right)) flipColors(h);
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder().append("<");
+            forEach(n -> {
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(n.key).append(" => ").append(n.value);
+            });
+            return sb.append(">").toString();
+        }
+    }
+
+    private static final class TreeNode<K, V> {
+        int hash;
+        K key;
+        V value;
+        long seq;
+        TreeNode<K, V> left, right;
+        boolean color = TreeBin.RED;
+
+        TreeNode(int hash, K key, V value, long seq) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.seq = seq;
+        }
+
+        void copyFrom(TreeNode<K, V> other) {
+            hash = other.hash;
+            key = other.key;
+            value = other.value;
+            seq = other.seq;
+        }
+    }
+
     private static final int DEFAULT_CAPACITY = 3;
     private static final double DEFAULT_LOAD_FACTOR = 0.75;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    //A chain is converted into a tree once it reaches this length
+    private static final int TREEIFY_THRESHOLD = 8;
+    //A tree is converted back into a chain once it shrinks to this size
+    private static final int UNTREEIFY_THRESHOLD = 6;
+    //Number of old buckets moved by every operation during incremental resize
+    private static final int MIGRATION_STEP = 16;
+    //The table halves once fewer than threshold / SHRINK_RATIO entries are left.
+    //Growing doubles at threshold, so a table can't bounce between two sizes
+    private static final int SHRINK_RATIO = 4;
+    //Load factor of the open addressing table a snapshot file is laid out as
+    private static final double SNAPSHOT_LOAD_FACTOR = 0.7;
 
     private final double maxLoadFactor;
+    private final boolean powerOfTwoCapacity;
+    private final boolean incrementalResize;
+    //See normalizeIndex
+    private final int seed = SeededHash.newSeed();
+    //The table never shrinks below the capacity it was created with
+    private final int initialCapacity;
     private int capacity;
     private int threshold;
     private int count = 0;
+    //Number of structural modifications, used by iterators to fail fast
+    private int modCount = 0;
 
     private Entry<K, V>[] table;
 
+    //Table being drained into `table` while an incremental resize is in progress.
+    //Buckets below migrateIndex have already been moved and are null
+    private Entry<K, V>[] oldTable;
+    private int migrateIndex;
+
+    //Optional multiset of the stored values (value => number of keys mapped to it)
+    private Map<V, Integer> valueIndex;
+
+    //Hit/miss and resize counters, null unless recording is on, see HashTableStats
+    private HashTableStats.Recorder stats = HashTableStats.Recorder.fromSystemProperty();
+
 
     public NodeBasedHashTableSeparateChaining() {
         this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
@@ -54,6 +373,30 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
     }
 
     public NodeBasedHashTableSeparateChaining(int capacity, double maxLoadFactor) {
+        this(capacity, maxLoadFactor, false);
+    }
+
+    /**
+     * @param powerOfTwoCapacity when {@code true} the capacity is rounded up to a
+     *                           power of two and buckets are selected by masking
+     *                           the spread hash instead of taking the remainder,
+     *                           see {@link #normalizeIndex(int, int)}
+     */
+    public NodeBasedHashTableSeparateChaining(int capacity, double maxLoadFactor, boolean powerOfTwoCapacity) {
+        this(capacity, maxLoadFactor, powerOfTwoCapacity, false);
+    }
+
+    /**
+     * @param incrementalResize when {@code true} a resize only allocates the new
+     *                          table, the entries are moved over a few buckets
+     *                          at a time by the following operations. Until the
+     *                          migration completes lookups consult both tables.
+     *                          This bounds the latency of the {@code put} that
+     *                          triggers the resize at the cost of keeping both
+     *                          tables alive for a while
+     */
+    public NodeBasedHashTableSeparateChaining(int capacity, double maxLoadFactor,
+                                              boolean powerOfTwoCapacity, boolean incrementalResize) {
         if (capacity < 0) {
             throw new IllegalArgumentException("Invalid capacity");
         }
@@ -63,9 +406,15 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
         }
 
         this.maxLoadFactor = maxLoadFactor;
+        this.powerOfTwoCapacity = powerOfTwoCapacity;
+        this.incrementalResize = incrementalResize;
         this.capacity = Math.max(capacity, DEFAULT_CAPACITY);
-        threshold = (int) (capacity * maxLoadFactor);
-        table = (Entry<K, V>[]) new Entry[capacity];
+        if (powerOfTwoCapacity) {
+            this.capacity = tableSizeFor(this.capacity);
+        }
+        initialCapacity = this.capacity;
+        threshold = (int) (this.capacity * maxLoadFactor);
+        table = (Entry<K, V>[]) new Entry[this.capacity];
     }
 
     @Override
@@ -78,41 +427,152 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
         return count == 0;
     }
 
+    /**
+     * Removes all the entries and goes back to the initial capacity, so a table
+     * that was once large doesn't keep its bucket array.
+     */
     @Override
     public void clear() {
-        for (int i = 0; i < table.length; i++) {
-            clearBucket(table[i]);
-            table[i] = null;
-        }
+        capacity = initialCapacity;
+        threshold = (int) (maxLoadFactor * capacity);
+        table = (Entry<K, V>[]) new Entry[capacity];
+        oldTable = null;
         count = 0;
+        modCount++;
+        if (valueIndex != null) {
+            valueIndex.clear();
+        }
     }
 
-    private void clearBucket(Entry<K, V> head) {
-        while (head != null) {
-            Entry<K, V> next = head.next;
-            head.next = null;
-            head.value = null;
-            head = next;
+    /**
+     * Shrinks the table to the smallest capacity that holds the current entries
+     * without exceeding the load factor, but not below the initial capacity.
+     * A pending incremental resize is completed as well.
+     */
+    public void compact() {
+        int newCapacity = (int) Math.min(MAXIMUM_CAPACITY, (long) (count / maxLoadFactor) + 1);
+        newCapacity = Math.max(initialCapacity, newCapacity);
+        if (powerOfTwoCapacity) {
+            newCapacity = tableSizeFor(newCapacity);
+        }
+        if (newCapacity == capacity && oldTable == null) {
+            return;
+        }
+        if (newCapacity != capacity) {
+            resizeTable(newCapacity);
+        }
+        migrateBuckets(oldTable == null ? 0 : oldTable.length);
+        //Buckets were relinked, live iterators can't continue
+        modCount++;
+    }
+
+    //Halves the table when it has become sparse after removals
+    private void shrinkIfSparse() {
+        if (capacity > initialCapacity && count < threshold / SHRINK_RATIO) {
+            resizeTable(Math.max(initialCapacity, capacity / 2));
         }
     }
 
     @Override
     public boolean containsKey(K key) {
-        checkKeyNotNull(key);
-        int hash = key.hashCode();
-        int index = normalizeIndex(hash);
-        for (Entry<K, V> e = table[index]; e != null; e = e.next) {
-            if (e.key.equals(key)) {
-                return true;
+        return get(key) != null;
+    }
+
+    /**
+     * Starts maintaining a reverse index of the values, so that
+     * {@link #containsValue(Object)} becomes a single hash lookup instead of a
+     * scan over every bucket. The index is built from the current content and
+     * kept in sync by every following {@code put}, {@code remove} and
+     * {@code clear}.
+     * <p>
+     * The index costs one {@code java.util.HashMap} entry per distinct value
+     * (roughly 50 bytes plus a boxed counter), and makes every update do an
+     * extra lookup in it. Values must implement {@code hashCode} consistently
+     * with {@code equals}.
+     */
+    public void enableValueIndex() {
+        if (valueIndex != null) {
+            return;
+        }
+        valueIndex = new HashMap<>();
+        for (V value : this) {
+            valueIndex.merge(value, 1, Integer::sum);
+        }
+    }
+
+    //Keeps the reverse value index in sync, either of the values may be null
+    private void reindex(V removed, V added) {
+        if (valueIndex == null) {
+            return;
+        }
+        if (removed != null) {
+            valueIndex.computeIfPresent(removed, (v, n) -> n == 1 ? null : n - 1);
+        }
+        if (added != null) {
+            valueIndex.merge(added, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Starts counting hits, misses and resizes. Recording can also be turned on
+     * for all tables with the {@link HashTableStats#ENABLED_PROPERTY} system
+     * property.
+     */
+    public void enableStats() {
+        if (stats == null) {
+            stats = new HashTableStats.Recorder();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the chain lengths and, if recording is on, of the
+     * counters. Tree bins count as chains of their size. Computing the
+     * histogram scans every bucket.
+     */
+    public HashTableStats stats() {
+        HashTableStats.HistogramBuilder histogram = new HashTableStats.HistogramBuilder();
+        addChainLengths(histogram, table);
+        int buckets = capacity;
+        if (oldTable != null) {
+            addChainLengths(histogram, oldTable);
+            buckets += oldTable.length;
+        }
+        return histogram.build(count, buckets, stats);
+    }
+
+    private void addChainLengths(HashTableStats.HistogramBuilder histogram, Entry<K, V>[] tab) {
+        for (Entry<K, V> bucket : tab) {
+            int length = 0;
+            if (bucket instanceof TreeBin) {
+                length = ((TreeBin<K, V>) bucket).size;
+            } else {
+                for (Entry<K, V> e = bucket; e != null; e = e.next) {
+                    length++;
+                }
             }
+            histogram.add(length);
         }
-        return false;
     }
 
     @Override
     public boolean containsValue(V value) {
         checkValueNotNull(value);
-        for (Entry<K, V> bucket : table) {
+        if (valueIndex != null) {
+            return valueIndex.containsKey(value);
+        }
+        return containsValue(table, value) || (oldTable != null && containsValue(oldTable, value));
+    }
+
+    private boolean containsValue(Entry<K, V>[] tab, V value) {
+        for (Entry<K, V> bucket : tab) {
+            if (bucket instanceof TreeBin) {
+                boolean[] found = new boolean[1];
+                ((TreeBin<K, V>) bucket).forEach(n -> found[0] |= n.value.equals(value));
+                if (found[0]) {
+                    return true;
+                }
+                continue;
+            }
             for (Entry<K, V> e = bucket; e != null; e = e.next) {
                 if (e.value.equals(value)) {
                     return true;
@@ -125,10 +585,29 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
     @Override
     public V get(K key) {
         checkKeyNotNull(key);
+        migrateBuckets(MIGRATION_STEP);
         int hash = key.hashCode();
-        int index = normalizeIndex(hash);
-        for (Entry<K, V> e = table[index]; e != null; e = e.next) {
-            if (e.key.equals(key)) {
+        V value = getFrom(table, normalizeIndex(hash, capacity), hash, key);
+        if (value == null && oldTable != null) {
+            value = getFrom(oldTable, normalizeIndex(hash, oldTable.length), hash, key);
+        }
+        if (stats != null) {
+            stats.lookup(value != null);
+        }
+        return value;
+    }
+
+    private V getFrom(Entry<K, V>[] tab, int index, int hash, K key) {
+        return findValue(tab[index], hash, key);
+    }
+
+    private V findValue(Entry<K, V> head, int hash, K key) {
+        if (head instanceof TreeBin) {
+            TreeNode<K, V> node = ((TreeBin<K, V>) head).find(hash, key);
+            return node != null ? node.value : null;
+        }
+        for (Entry<K, V> e = head; e != null; e = e.next) {
+            if (e.hash == hash && e.key.equals(key)) {
                 return e.value;
             }
         }
@@ -139,69 +618,262 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
     public V put(K key, V value) {
         checkValueNotNull(value);
         checkKeyNotNull(key);
+        migrateBuckets(MIGRATION_STEP);
         int hash = key.hashCode();
-        int index = normalizeIndex(hash);
-        for (Entry<K, V> e = table[index]; e != null; e = e.next) {
-            if (e.key.equals(key)) {
+        V old = replaceIn(table, normalizeIndex(hash, capacity), hash, key, value);
+        if (old == null && oldTable != null) {
+            old = replaceIn(oldTable, normalizeIndex(hash, oldTable.length), hash, key, value);
+        }
+        if (old == null) {
+            addEntry(hash, key, value);
+        }
+        reindex(old, value);
+        return old;
+    }
+
+    /**
+     * Sizes the table for the whole batch up front, so it grows at most once,
+     * then inserts the pairs using bucket indices computed in a separate pass.
+     */
+    @Override
+    public void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values have different lengths");
+        }
+        int n = keys.length;
+        int[] hashes = new int[n];
+        for (int i = 0; i < n; i++) {
+            checkKeyNotNull(keys[i]);
+            checkValueNotNull(values[i]);
+            hashes[i] = keys[i].hashCode();
+        }
+
+        ensureCapacity(count + n);
+        migrateBuckets(MIGRATION_STEP * n);
+
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = normalizeIndex(hashes[i], capacity);
+        }
+
+        for (int i = 0; i < n; i++) {
+            int hash = hashes[i];
+            V old = replaceIn(table, indices[i], hash, keys[i], values[i]);
+            if (old == null && oldTable != null) {
+                old = replaceIn(oldTable, normalizeIndex(hash, oldTable.length), hash, keys[i], values[i]);
+            }
+            if (old == null) {
+                addEntry(hash, keys[i], values[i]);
+            }
+            reindex(old, values[i]);
+        }
+    }
+
+    /**
+     * Looks the keys up in three passes: hashes first, then the heads of all
+     * the buckets, then the chains. The loads of one pass don't depend on each
+     * other, so the CPU can keep several cache misses in flight at once instead
+     * of waiting for every key's bucket in turn.
+     */
+    @Override
+    public void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array is too short");
+        }
+        int n = keys.length;
+        int[] hashes = new int[n];
+        for (int i = 0; i < n; i++) {
+            checkKeyNotNull(keys[i]);
+            hashes[i] = keys[i].hashCode();
+        }
+
+        migrateBuckets(MIGRATION_STEP * n);
+
+        Entry<K, V>[] heads = (Entry<K, V>[]) new Entry[n];
+        for (int i = 0; i < n; i++) {
+            heads[i] = table[normalizeIndex(hashes[i], capacity)];
+        }
+
+        for (int i = 0; i < n; i++) {
+            V value = findValue(heads[i], hashes[i], keys[i]);
+            if (value == null && oldTable != null) {
+                value = getFrom(oldTable, normalizeIndex(hashes[i], oldTable.length), hashes[i], keys[i]);
+            }
+            if (stats != null) {
+                stats.lookup(value != null);
+            }
+            out[i] = value;
+        }
+    }
+
+    //Grows the table once, so it can hold `expected` entries without further resizes
+    private void ensureCapacity(int expected) {
+        if (expected <= threshold) {
+            return;
+        }
+        int newCapacity = capacity;
+        while ((int) (maxLoadFactor * newCapacity) < expected && newCapacity < MAXIMUM_CAPACITY) {
+            newCapacity *= 2;
+        }
+        resizeTable(newCapacity);
+    }
+
+    //Replaces the value of an existing mapping, returns null if there is none
+    private V replaceIn(Entry<K, V>[] tab, int index, int hash, K key, V value) {
+        Entry<K, V> head = tab[index];
+        if (head instanceof TreeBin) {
+            TreeNode<K, V> node = ((TreeBin<K, V>) head).find(hash, key);
+            if (node != null) {
+                V old = node.value;
+                node.value = value;
+                return old;
+            }
+            return null;
+        }
+        for (Entry<K, V> e = head; e != null; e = e.next) {
+            if (e.hash == hash && e.key.equals(key)) {
                 V old = e.value;
                 e.value = value;
                 return old;
             }
         }
-
-        addEntry(hash, index, key, value);
         return null;
     }
 
-    private void addEntry(int hash, int index, K key, V value) {
+    private void addEntry(int hash, K key, V value) {
         if (count >= threshold) {
             resizeTable(capacity * 2);
-            index = normalizeIndex(hash);
         }
-        Entry<K, V> e = table[index];
-        table[index] = new Entry<>(key, value, e);
+        link(normalizeIndex(hash, capacity), new Entry<>(hash, key, value, null));
         count++;
+        modCount++;
     }
 
+    //Places the entry into the given bucket of the current table
+    private void link(int index, Entry<K, V> entry) {
+        Entry<K, V> head = table[index];
+        if (head instanceof TreeBin) {
+            ((TreeBin<K, V>) head).insert(entry.hash, entry.key, entry.value);
+        } else {
+            entry.next = head;
+            table[index] = entry;
+            treeifyIfNeeded(index);
+        }
+    }
+
+    private void treeifyIfNeeded(int index) {
+        int length = 0;
+        for (Entry<K, V> e = table[index]; e != null && length < TREEIFY_THRESHOLD; e = e.next) {
+            length++;
+        }
+        if (length < TREEIFY_THRESHOLD) {
+            return;
+        }
+
+        TreeBin<K, V> bin = new TreeBin<>();
+        Entry<K, V> e = table[index];
+        while (e != null) {
+            Entry<K, V> next = e.next;
+            bin.insert(e.hash, e.key, e.value);
+            e.next = null;
+            e = next;
+        }
+        table[index] = bin;
+    }
+
+    /**
+     * Swaps in a table of the given capacity. The buckets of the previous table
+     * are moved over right away, or, in the incremental mode, a few of them at a
+     * time on every following operation (see {@link #migrateBuckets(int)}), so no
+     * single operation pays for rehashing the whole table.
+     */
     private void resizeTable(int capacity) {
+        long start = System.nanoTime();
+        if (oldTable != null) {
+            //Grew again before the previous migration completed
+            migrateBuckets(oldTable.length);
+        }
+
+        oldTable = table;
+        migrateIndex = 0;
+
         this.capacity = capacity;
         threshold = (int) (maxLoadFactor * capacity);
+        table = (Entry<K, V>[]) new Entry[capacity];
 
-        Entry<K, V>[] newTable = (Entry<K, V>[]) new Entry[capacity];
+        if (!incrementalResize) {
+            migrateBuckets(oldTable.length);
+        }
+        if (stats != null) {
+            stats.resized(start);
+        }
+    }
 
-        for (Entry<K, V> bucket : table) {
+    //Moves up to `buckets` buckets of the old table into the current one
+    private void migrateBuckets(int buckets) {
+        if (oldTable == null) {
+            return;
+        }
+
+        int end = (int) Math.min(oldTable.length, (long) migrateIndex + buckets);
+        for (; migrateIndex < end; migrateIndex++) {
+            Entry<K, V> bucket = oldTable[migrateIndex];
+            if (bucket == null) {
+                continue;
+            }
+            oldTable[migrateIndex] = null;
+
+            if (bucket instanceof TreeBin) {
+                ((TreeBin<K, V>) bucket).forEach(n ->
+                        link(normalizeIndex(n.hash, capacity), new Entry<>(n.hash, n.key, n.value, null)));
+                continue;
+            }
             Entry<K, V> e = bucket;
             while (e != null) {
                 Entry<K, V> tmp = e.next;
-
-                int index = normalizeIndex(e.key.hashCode());
-                e.next = newTable[index];
-                newTable[index] = e;
-
+                link(normalizeIndex(e.hash, capacity), e);
                 e = tmp;
             }
         }
-        table = newTable;
+
+        if (migrateIndex == oldTable.length) {
+            oldTable = null;
+        }
     }
 
     @Override
     public V remove(K key) {
         checkKeyNotNull(key);
+        migrateBuckets(MIGRATION_STEP);
 
         int hash = key.hashCode();
-        int index = normalizeIndex(hash);
+        V oldValue = removeFrom(table, normalizeIndex(hash, capacity), hash, key);
+        if (oldValue == null && oldTable != null) {
+            oldValue = removeFrom(oldTable, normalizeIndex(hash, oldTable.length), hash, key);
+        }
+        if (oldValue != null) {
+            count--;
+            modCount++;
+            reindex(oldValue, null);
+            shrinkIfSparse();
+        }
+        return oldValue;
+    }
 
-        Entry<K, V> entry = table[index];
+    private V removeFrom(Entry<K, V>[] tab, int index, int hash, K key) {
+        Entry<K, V> entry = tab[index];
+        if (entry instanceof TreeBin) {
+            return removeTreeNode(tab, index, (TreeBin<K, V>) entry, hash, key);
+        }
         Entry<K, V> prev = null;
 
         while (entry != null) {
-            if (entry.key.equals(key)) {
+            if (entry.hash == hash && entry.key.equals(key)) {
                 if (prev != null) {
                     prev.next = entry.next;
                 } else {
-                    table[index] = entry.next;
+                    tab[index] = entry.next;
                 }
-                count--;
 
                 V oldValue = entry.value;
                 entry.value = null;
@@ -214,9 +886,185 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
         return null;
     }
 
+    private V removeTreeNode(Entry<K, V>[] tab, int index, TreeBin<K, V> bin, int hash, K key) {
+        TreeNode<K, V> node = bin.find(hash, key);
+        if (node == null) {
+            return null;
+        }
+        V oldValue = node.value;
+        bin.delete(node);
+        if (bin.size <= UNTREEIFY_THRESHOLD) {
+            tab[index] = bin.toChain();
+        }
+        return oldValue;
+    }
+
+    /**
+     * Returns a fail-fast iterator over the values. The iterator throws
+     * {@link ConcurrentModificationException} if the table is structurally
+     * modified (an entry is added or removed) after it has been created.
+     */
     @Override
     public Iterator<V> iterator() {
-        return null;
+        return Spliterators.iterator(spliterator());
+    }
+
+    /**
+     * Returns a fail-fast spliterator over the values. It splits by ranges of
+     * buckets, so {@code StreamSupport.stream(table.spliterator(), true)} scans
+     * the table in parallel.
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new BucketSpliterator<>((k, v) -> v, Spliterator.NONNULL);
+    }
+
+    //Fail-fast view of the keys, see iterator() and spliterator()
+    public Iterable<K> keys() {
+        return view((k, v) -> k, Spliterator.NONNULL | Spliterator.DISTINCT);
+    }
+
+    //Fail-fast view of the values, see iterator() and spliterator()
+    public Iterable<V> values() {
+        return this;
+    }
+
+    //Fail-fast view of immutable snapshots of the entries
+    public Iterable<Map.Entry<K, V>> entries() {
+        return view(AbstractMap.SimpleImmutableEntry::new, Spliterator.NONNULL | Spliterator.DISTINCT);
+    }
+
+    private <T> Iterable<T> view(BiFunction<K, V, T> extractor, int characteristics) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return Spliterators.iterator(spliterator());
+            }
+
+            @Override
+            public Spliterator<T> spliterator() {
+                return new BucketSpliterator<>(extractor, characteristics);
+            }
+        };
+    }
+
+    /**
+     * Walks the buckets in the range {@code [index, fence)} of the table the
+     * spliterator was created for. A split hands the lower half of the remaining
+     * buckets over to a new spliterator.
+     */
+    private final class BucketSpliterator<T> implements Spliterator<T> {
+
+        private final BiFunction<K, V, T> extractor;
+        private final int characteristics;
+        private final Entry<K, V>[] tab;
+        private final int expectedModCount;
+        private int index;
+        private final int fence;
+        private long estimate;
+
+        //Position inside the current bucket, either a chain or a tree
+        private Entry<K, V> current;
+        private Iterator<TreeNode<K, V>> treeNodes;
+
+        BucketSpliterator(BiFunction<K, V, T> extractor, int characteristics) {
+            //Iteration covers a single table, so a pending resize is completed first
+            migrateBuckets(Integer.MAX_VALUE);
+            this.extractor = extractor;
+            this.characteristics = characteristics;
+            this.tab = table;
+            this.expectedModCount = modCount;
+            this.index = 0;
+            this.fence = tab.length;
+            this.estimate = count;
+        }
+
+        private BucketSpliterator(BucketSpliterator<T> parent, int index, int fence, long estimate) {
+            this.extractor = parent.extractor;
+            this.characteristics = parent.characteristics;
+            this.tab = parent.tab;
+            this.expectedModCount = parent.expectedModCount;
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            checkForComodification();
+            while (true) {
+                if (current != null) {
+                    Entry<K, V> e = current;
+                    current = e.next;
+                    action.accept(extractor.apply(e.key, e.value));
+                    checkForComodification();
+                    return true;
+                }
+                if (treeNodes != null && treeNodes.hasNext()) {
+                    TreeNode<K, V> n = treeNodes.next();
+                    action.accept(extractor.apply(n.key, n.value));
+                    checkForComodification();
+                    return true;
+                }
+                treeNodes = null;
+                if (index >= fence) {
+                    return false;
+                }
+
+                Entry<K, V> head = tab[index++];
+                if (head instanceof TreeBin) {
+                    List<TreeNode<K, V>> nodes = new ArrayList<>(((TreeBin<K, V>) head).size);
+                    ((TreeBin<K, V>) head).forEach(nodes::add);
+                    treeNodes = nodes.iterator();
+                } else {
+                    current = head;
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (index >= mid) {
+                return null;
+            }
+            BucketSpliterator<T> prefix = new BucketSpliterator<>(this, index, mid, estimate >>>= 1);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Writes the entries to a snapshot file that
+     * {@link OffHeapHashTable#map(Path, FileChannel.MapMode, FixedWidthSerializer, FixedWidthSerializer)}
+     * maps back without any {@code put}. The entries are first copied into an
+     * {@link OffHeapHashTable} sized for them, since the file keeps that
+     * table's slot layout, so writing needs that much off-heap memory.
+     */
+    public void writeSnapshot(Path file, FixedWidthSerializer<K> keySerializer,
+                              FixedWidthSerializer<V> valueSerializer) throws IOException {
+        OffHeapHashTable<K, V> snapshot = new OffHeapHashTable<>(keySerializer, valueSerializer,
+                (int) Math.min(MAXIMUM_CAPACITY, count / SNAPSHOT_LOAD_FACTOR + 1), SNAPSHOT_LOAD_FACTOR);
+        for (Map.Entry<K, V> entry : entries()) {
+            snapshot.put(entry.getKey(), entry.getValue());
+        }
+        snapshot.writeSnapshot(file);
     }
 
     @Override
@@ -224,17 +1072,26 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
 
         StringBuilder sb = new StringBuilder();
         sb.append("{");
-        for (int i = 0; i < capacity; i++) {
-            Entry<K, V> bucket = table[i];
+        if (oldTable != null) {
+            appendBuckets(sb, oldTable);
+        }
+        appendBuckets(sb, table);
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private void appendBuckets(StringBuilder sb, Entry<K, V>[] tab) {
+        for (Entry<K, V> bucket : tab) {
             if (bucket != null) {
                 sb.append(toString(bucket)).append(", ");
             }
         }
-        sb.append("}");
-        return sb.toString();
     }
 
     private String toString(Entry<K, V> bucket) {
+        if (bucket instanceof TreeBin) {
+            return bucket.toString();
+        }
         StringBuilder sb = new StringBuilder().append("[");
         Entry<K, V> trav = bucket;
         while (trav != null) {
@@ -247,7 +1104,6 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
         return sb.append("]").toString();
     }
 
-
     /**
      * Converts hash value to an index. Essentially, this strips the
      * negative sign and places the hash value in the domain [0, capacity]
@@ -258,9 +1114,29 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
      * if the number is positive or negative. ANDing (&) with this mask
      * effectively sets the signed bit to 0, which means the number
      * will always be positive.
+     * <p>
+     * In the power of two mode the integer division is replaced with a mask.
+     * <p>
+     * The hash code is first combined with the random seed of the table, so
+     * the bucket of a key differs from table to table and keys that all land
+     * in one bucket can't be prepared in advance (hash flooding). This only
+     * helps against keys whose hash codes differ: keys with equal hash codes
+     * share a bucket whatever the seed, which treeification keeps at
+     * logarithmic cost for {@code Comparable} keys.
      */
-    private int normalizeIndex(int hashCode) {
-        return (hashCode & 0x7FFFFFFF) % capacity;
+    private int normalizeIndex(int hashCode, int capacity) {
+        int h = SeededHash.scramble(hashCode, seed);
+        if (powerOfTwoCapacity) {
+            return h & (capacity - 1);
+        }
+        return (h & 0x7FFFFFFF) % capacity;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
     }
 
     private void checkKeyNotNull(K key) {
@@ -293,6 +1169,13 @@ public class NodeBasedHashTableSeparateChaining<K, V> implements Hashable<K, V>,
 
         System.out.println(custom);
 
+        for (Map.Entry<TestKey, TestValue> entry : custom.entries()) {
+            System.out.print(entry + " ");
+        }
+        System.out.println();
+        System.out.println("Parallel count: " + StreamSupport.stream(custom.spliterator(), true).count());
+        System.out.println("Stats: " + custom.stats());
+
     }
 
 }
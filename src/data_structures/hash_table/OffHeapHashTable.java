@@ -0,0 +1,496 @@
+package data_structures.hash_table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Open addressing hash table that keeps its keys and values outside of the
+ * Java heap, in direct {@link ByteBuffer}s.
+ * <p>
+ * Keys and values are serialized into fixed width slots by the supplied
+ * {@link FixedWidthSerializer}s. A slot is laid out as
+ * <pre>
+ * [ header : 4 bytes ][ key : keyWidth bytes ][ value : valueWidth bytes ]
+ * </pre>
+ * The header holds the hash of the key bytes with the sign bit set, or 0 if
+ * the slot is empty. Keys are hashed and compared in serialized form, so the
+ * table never calls {@code hashCode}/{@code equals} of the keys, and a resize
+ * just copies raw slots without deserializing anything.
+ * <p>
+ * The slots are split into chunks of at most 1 GiB, since a single buffer is
+ * indexed by {@code int}. However many entries are stored, the garbage
+ * collector only sees this object, a few scratch buffers and one buffer per
+ * chunk; the memory of the old chunks is released once the collector reclaims
+ * the buffers after a resize.
+ * <p>
+ * Probing is linear and removal uses backward shift deletion, the same as in
+ * {@link OpenAddressingHashTable}. The table is not thread safe.
+ * <p>
+ * {@link #writeSnapshot(Path)} dumps the slots to a file as they are, and
+ * {@link #map(Path, FileChannel.MapMode, FixedWidthSerializer, FixedWidthSerializer)}
+ * maps such a file back without reading or rehashing it, so lookups can be
+ * served right after a restart while the OS pages the file in on demand.
+ */
+public class OffHeapHashTable<K, V> implements Hashable<K, V> {
+
+    private static final int HEADER = Integer.BYTES;
+    private static final int EMPTY = 0;
+    private static final int OCCUPIED = 0x80000000;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double DEFAULT_LOAD_FACTOR = 0.75;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int MAXIMUM_CHUNK_BYTES = 1 << 30;
+
+    //Snapshot file header: magic, version, key width, value width, capacity, count, load factor
+    private static final int SNAPSHOT_MAGIC = 0x4F484854;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER = 6 * Integer.BYTES + Double.BYTES;
+
+    private final FixedWidthSerializer<K> keySerializer;
+    private final FixedWidthSerializer<V> valueSerializer;
+    private final int keyWidth;
+    private final int valueWidth;
+    private final int slotSize;
+    private final double maxLoadFactor;
+    private final boolean readOnly;
+
+    private int capacity;
+    private int mask;
+    private int threshold;
+    private int count = 0;
+
+    //Slot i lives in chunks[i >>> chunkShift] at ((i & chunkMask) * slotSize)
+    private ByteBuffer[] chunks;
+    private int chunkShift;
+    private int chunkMask;
+
+    //Serialized form of the key/value an operation works with
+    private final ByteBuffer keyScratch;
+    private final ByteBuffer valueScratch;
+
+    public OffHeapHashTable(FixedWidthSerializer<K> keySerializer, FixedWidthSerializer<V> valueSerializer) {
+        this(keySerializer, valueSerializer, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OffHeapHashTable(FixedWidthSerializer<K> keySerializer, FixedWidthSerializer<V> valueSerializer,
+                            int capacity, double maxLoadFactor) {
+        this(keySerializer, valueSerializer, maxLoadFactor, false);
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        allocate(tableSizeFor(Math.max(capacity, 2)));
+    }
+
+    private OffHeapHashTable(FixedWidthSerializer<K> keySerializer, FixedWidthSerializer<V> valueSerializer,
+                             double maxLoadFactor, boolean readOnly) {
+        if (maxLoadFactor <= 0 || maxLoadFactor >= 1) {
+            throw new IllegalArgumentException("Invalid maxLoadFactory");
+        }
+
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.keyWidth = keySerializer.width();
+        this.valueWidth = valueSerializer.width();
+        this.slotSize = HEADER + keyWidth + valueWidth;
+        this.maxLoadFactor = maxLoadFactor;
+        this.readOnly = readOnly;
+        keyScratch = ByteBuffer.allocate(keyWidth).order(ByteOrder.LITTLE_ENDIAN);
+        valueScratch = ByteBuffer.allocate(valueWidth).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a file written by {@link #writeSnapshot(Path)}. Nothing is read up
+     * front: the slots are used in place, so the first {@code get} only faults
+     * in the pages its probe touches.
+     * <p>
+     * With {@link FileChannel.MapMode#READ_ONLY} every update throws
+     * {@link UnsupportedOperationException}. With
+     * {@link FileChannel.MapMode#PRIVATE} the table is copy-on-write: updates
+     * go to private copies of the touched pages and never reach the file, and
+     * the first resize moves the table to regular direct buffers.
+     *
+     * @throws IOException if the file can't be mapped or isn't a snapshot
+     *                     written with serializers of the same widths
+     */
+    public static <K, V> OffHeapHashTable<K, V> map(Path file, FileChannel.MapMode mode,
+                                                    FixedWidthSerializer<K> keySerializer,
+                                                    FixedWidthSerializer<V> valueSerializer) throws IOException {
+        if (mode != FileChannel.MapMode.READ_ONLY && mode != FileChannel.MapMode.PRIVATE) {
+            throw new IllegalArgumentException("Only READ_ONLY and PRIVATE mappings are supported");
+        }
+
+        //A private mapping needs a channel opened for writing, although it never writes to the file
+        try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+                ? FileChannel.open(file, StandardOpenOption.READ)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) break;
+            }
+            header.flip();
+            if (header.remaining() < SNAPSHOT_HEADER || header.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a hash table snapshot: " + file);
+            }
+            if (header.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version: " + file);
+            }
+            if (header.getInt() != keySerializer.width() || header.getInt() != valueSerializer.width()) {
+                throw new IOException("Snapshot was written with serializers of other widths: " + file);
+            }
+            int capacity = header.getInt();
+            int count = header.getInt();
+            double maxLoadFactor = header.getDouble();
+
+            OffHeapHashTable<K, V> table = new OffHeapHashTable<>(keySerializer, valueSerializer,
+                    maxLoadFactor, mode == FileChannel.MapMode.READ_ONLY);
+            if (Integer.bitCount(capacity) != 1 || capacity > MAXIMUM_CAPACITY
+                    || channel.size() != SNAPSHOT_HEADER + (long) capacity * table.slotSize) {
+                throw new IOException("Truncated or corrupted snapshot: " + file);
+            }
+
+            int slotsPerChunk = table.layout(capacity);
+            long chunkBytes = (long) slotsPerChunk * table.slotSize;
+            table.chunks = new ByteBuffer[capacity / slotsPerChunk];
+            for (int i = 0; i < table.chunks.length; i++) {
+                table.chunks[i] = channel.map(mode, SNAPSHOT_HEADER + i * chunkBytes, chunkBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            table.count = count;
+            return table;
+        }
+    }
+
+    /**
+     * Writes the table to the file, replacing its content. The file holds a
+     * small header followed by the raw slots, so its size is proportional to
+     * the capacity rather than to the number of entries.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION)
+                    .putInt(keyWidth).putInt(valueWidth)
+                    .putInt(capacity).putInt(count)
+                    .putDouble(maxLoadFactor)
+                    .flip();
+            writeFully(channel, header);
+            for (ByteBuffer chunk : chunks) {
+                writeFully(channel, chunk.duplicate().clear());
+            }
+            channel.force(false);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        for (int slot = 0; slot < capacity; slot++) {
+            chunk(slot).putInt(offset(slot), EMPTY);
+        }
+        count = 0;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        checkKeyNotNull(key);
+        return indexOf(serializeKey(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        checkValueNotNull(value);
+        valueSerializer.write(value, valueScratch, 0);
+        for (int slot = 0; slot < capacity; slot++) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            if (chunk.getInt(offset) != EMPTY && bytesEqual(chunk, offset + HEADER + keyWidth, valueScratch, valueWidth)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(K key) {
+        checkKeyNotNull(key);
+        int slot = indexOf(serializeKey(key));
+        return slot >= 0 ? readValue(slot) : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkWritable();
+        checkValueNotNull(value);
+        checkKeyNotNull(key);
+
+        int header = serializeKey(key);
+        int slot = header & mask;
+        while (true) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            int h = chunk.getInt(offset);
+            if (h == EMPTY) {
+                break;
+            }
+            if (h == header && bytesEqual(chunk, offset + HEADER, keyScratch, keyWidth)) {
+                V old = readValue(slot);
+                valueSerializer.write(value, chunk, offset + HEADER + keyWidth);
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        chunk.putInt(offset, header);
+        copyBytes(keyScratch, 0, chunk, offset + HEADER, keyWidth);
+        valueSerializer.write(value, chunk, offset + HEADER + keyWidth);
+        if (++count > threshold) {
+            resizeTable(capacity * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        checkWritable();
+        checkKeyNotNull(key);
+
+        int slot = indexOf(serializeKey(key));
+        if (slot < 0) {
+            return null;
+        }
+
+        V oldValue = readValue(slot);
+        shiftBack(slot);
+        count--;
+        return oldValue;
+    }
+
+    //Backward shift deletion, see OpenAddressingHashTable#shiftBack
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            int header = chunk(i).getInt(offset(i));
+            if (header == EMPTY) {
+                break;
+            }
+            int home = header & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                copySlot(chunks, i, chunks, gap);
+                gap = i;
+            }
+        }
+        chunk(gap).putInt(offset(gap), EMPTY);
+    }
+
+    //Returns the slot holding the key in keyScratch or -1 if the key is absent
+    private int indexOf(int header) {
+        int slot = header & mask;
+        while (true) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            int h = chunk.getInt(offset);
+            if (h == EMPTY) {
+                return -1;
+            }
+            if (h == header && bytesEqual(chunk, offset + HEADER, keyScratch, keyWidth)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    //Serializes the key into keyScratch and returns the slot header for it
+    private int serializeKey(K key) {
+        keySerializer.write(key, keyScratch, 0);
+        return hashBytes(keyScratch, keyWidth) | OCCUPIED;
+    }
+
+    private V readValue(int slot) {
+        return valueSerializer.read(chunk(slot), offset(slot) + HEADER + keyWidth);
+    }
+
+    private void resizeTable(int newCapacity) {
+        if (newCapacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Hash table is too large");
+        }
+
+        ByteBuffer[] oldChunks = chunks;
+        int oldCapacity = capacity;
+        int oldShift = chunkShift;
+        int oldMask = chunkMask;
+        allocate(newCapacity);
+
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer chunk = oldChunks[slot >>> oldShift];
+            int offset = (slot & oldMask) * slotSize;
+            int header = chunk.getInt(offset);
+            if (header == EMPTY) {
+                continue;
+            }
+            int target = header & mask;
+            while (chunk(target).getInt(offset(target)) != EMPTY) {
+                target = (target + 1) & mask;
+            }
+            copyBytes(chunk, offset, chunk(target), offset(target), slotSize);
+        }
+    }
+
+    private void allocate(int capacity) {
+        int slotsPerChunk = layout(capacity);
+
+        //allocateDirect returns zeroed memory, so every slot starts empty
+        chunks = new ByteBuffer[capacity / slotsPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(slotsPerChunk * slotSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    //Sets up the fields describing a table of the given capacity and returns the slots per chunk
+    private int layout(int capacity) {
+        this.capacity = capacity;
+        mask = capacity - 1;
+        threshold = Math.min((int) (capacity * maxLoadFactor), capacity - 1);
+
+        int slotsPerChunk = Integer.highestOneBit(Math.max(1, MAXIMUM_CHUNK_BYTES / slotSize));
+        slotsPerChunk = Math.min(slotsPerChunk, capacity);
+        chunkShift = Integer.numberOfTrailingZeros(slotsPerChunk);
+        chunkMask = slotsPerChunk - 1;
+        return slotsPerChunk;
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> chunkShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & chunkMask) * slotSize;
+    }
+
+    private void copySlot(ByteBuffer[] from, int fromSlot, ByteBuffer[] to, int toSlot) {
+        copyBytes(from[fromSlot >>> chunkShift], offset(fromSlot), to[toSlot >>> chunkShift], offset(toSlot), slotSize);
+    }
+
+    private static void copyBytes(ByteBuffer from, int fromOffset, ByteBuffer to, int toOffset, int length) {
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            to.putLong(toOffset + i, from.getLong(fromOffset + i));
+        }
+        for (; i < length; i++) {
+            to.put(toOffset + i, from.get(fromOffset + i));
+        }
+    }
+
+    private static boolean bytesEqual(ByteBuffer a, int offset, ByteBuffer b, int length) {
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            if (a.getLong(offset + i) != b.getLong(i)) return false;
+        }
+        for (; i < length; i++) {
+            if (a.get(offset + i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the first {@code length} bytes of the buffer eight at a time and
+     * finishes with the murmur3 finalizer, so that every input bit affects the
+     * low bits the slot index is taken from.
+     */
+    private static int hashBytes(ByteBuffer buffer, int length) {
+        long h = length;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            h = (h ^ buffer.getLong(i)) * 0x9E3779B97F4A7C15L;
+        }
+        for (; i < length; i++) {
+            h = (h ^ buffer.get(i)) * 0x9E3779B97F4A7C15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new UnsupportedOperationException("Table is mapped read-only");
+    }
+
+    private void checkKeyNotNull(K key) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+    }
+
+    private void checkValueNotNull(V value) {
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int slot = 0; slot < capacity; slot++) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            if (chunk.getInt(offset) != EMPTY) {
+                sb.append(keySerializer.read(chunk, offset + HEADER)).append(" => ")
+                        .append(valueSerializer.read(chunk, offset + HEADER + keyWidth)).append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        OffHeapHashTable<Long, Integer> custom =
+                new OffHeapHashTable<>(FixedWidthSerializer.longs(), FixedWidthSerializer.ints());
+
+        for (long i = 0; i < 20; i++) {
+            custom.put(i << 32, (int) i);
+        }
+
+        custom.put(0L, 199);
+
+        System.out.println(custom);
+
+        System.out.println("Is empty: " + custom.isEmpty());
+        System.out.println("Count: " + custom.size());
+        System.out.println("GET: " + custom.get(19L << 32));
+        System.out.println("Contains key 14: " + custom.containsKey(14L << 32));
+        System.out.println("ContainsValue 17: " + custom.containsValue(17));
+        System.out.println("Removed value: " + custom.remove(0L));
+        System.out.println("Count: " + custom.size());
+
+        System.out.println(custom);
+    }
+}
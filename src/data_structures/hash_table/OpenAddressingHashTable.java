@@ -0,0 +1,262 @@
+package data_structures.hash_table;
+
+import data_structures.hash_table.test_data.TestKey;
+import data_structures.hash_table.test_data.TestValue;
+
+import java.util.Arrays;
+
+/**
+ * Hash table based on open addressing with linear probing.
+ * <p>
+ * Keys and values are kept in two parallel flat arrays, so a mapping costs
+ * no extra allocation and a probe sequence walks adjacent slots of the same
+ * array instead of chasing {@code next} pointers across the heap.
+ * <p>
+ * Removal doesn't leave tombstones behind. Instead, the entries that follow
+ * the removed slot in the same cluster are shifted back ("backward shift
+ * deletion"), so probe sequences never get longer because of deletions.
+ */
+@SuppressWarnings("unchecked")
+public class OpenAddressingHashTable<K, V> implements Hashable<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 4;
+    private static final double DEFAULT_LOAD_FACTOR = 0.5;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final double maxLoadFactor;
+    private int capacity;
+    private int mask;
+    private int threshold;
+    private int count = 0;
+
+    private Object[] keys;
+    private Object[] values;
+
+    public OpenAddressingHashTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OpenAddressingHashTable(int capacity) {
+        this(capacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OpenAddressingHashTable(int capacity, double maxLoadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+
+        if (maxLoadFactor <= 0 || maxLoadFactor >= 1) {
+            throw new IllegalArgumentException("Invalid maxLoadFactory");
+        }
+
+        this.maxLoadFactor = maxLoadFactor;
+        allocate(tableSizeFor(Math.max(capacity, DEFAULT_CAPACITY)));
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        count = 0;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        checkKeyNotNull(key);
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        checkValueNotNull(value);
+        for (int i = 0; i < capacity; i++) {
+            if (keys[i] != null && values[i].equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(K key) {
+        checkKeyNotNull(key);
+        int index = indexOf(key);
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkValueNotNull(value);
+        checkKeyNotNull(key);
+
+        int index = normalizeIndex(key.hashCode());
+        for (Object k = keys[index]; k != null; k = keys[index]) {
+            if (k.equals(key)) {
+                V old = (V) values[index];
+                values[index] = value;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++count > threshold) {
+            resizeTable(capacity * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        checkKeyNotNull(key);
+
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+
+        V oldValue = (V) values[index];
+        shiftBack(index);
+        count--;
+        return oldValue;
+    }
+
+    /**
+     * Closes the gap left at {@code gap} by moving back every entry of the
+     * cluster that would become unreachable otherwise. An entry at slot
+     * {@code i} can fill the gap only if its home slot isn't located
+     * cyclically in {@code (gap, i]}, i.e. the gap lies on its probe path.
+     */
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            Object k = keys[i];
+            if (k == null) {
+                break;
+            }
+            int home = normalizeIndex(k.hashCode());
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        values[gap] = null;
+    }
+
+    // Returns the slot holding the key or -1 if the key is absent
+    private int indexOf(Object key) {
+        int index = normalizeIndex(key.hashCode());
+        for (Object k = keys[index]; k != null; k = keys[index]) {
+            if (k.equals(key)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resizeTable(int capacity) {
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Hash table is too large");
+        }
+
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object k = oldKeys[i];
+            if (k != null) {
+                int index = normalizeIndex(k.hashCode());
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = k;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        mask = capacity - 1;
+        // Always keep at least one empty slot, so probing terminates
+        threshold = Math.min((int) (capacity * maxLoadFactor), capacity - 1);
+        keys = new Object[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Spreads the higher bits of the hash code downwards before masking.
+     * The capacity is a power of two, so without spreading only the lowest
+     * bits of the hash code would ever select a slot.
+     */
+    private int normalizeIndex(int hashCode) {
+        return (hashCode ^ (hashCode >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private void checkKeyNotNull(K key) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+    }
+
+    private void checkValueNotNull(V value) {
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < capacity; i++) {
+            if (keys[i] != null) {
+                sb.append(keys[i]).append(" => ").append(values[i]).append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        OpenAddressingHashTable<TestKey, TestValue> custom = new OpenAddressingHashTable<>(3);
+
+        for (int i = 0; i < 20; i++) {
+            custom.put(new TestKey(i), new TestValue(i));
+        }
+
+        custom.put(new TestKey(0), new TestValue(199));
+
+        System.out.println(custom);
+
+        System.out.println("Is empty: " + custom.isEmpty());
+        System.out.println("Count: " + custom.size());
+        System.out.println("GET: " + custom.get(new TestKey(19)));
+        System.out.println("Contains key 14: " + custom.containsKey(new TestKey(14)));
+        System.out.println("ContainsValue 17: " + custom.containsValue(new TestValue(17)));
+        System.out.println("Removed value: " + custom.remove(new TestKey(0)));
+        System.out.println("GET after shift: " + custom.get(new TestKey(18)));
+        System.out.println("Count: " + custom.size());
+
+        System.out.println(custom);
+    }
+}
@@ -0,0 +1,367 @@
+package data_structures.hash_table;
+
+import data_structures.hash_table.test_data.TestKey;
+import data_structures.hash_table.test_data.TestValue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable hash table built once from a fixed set of keys, using a minimal
+ * perfect hash constructed with the CHD ("compress, hash, displace") scheme.
+ * <p>
+ * The keys are split into buckets of about {@value #AVERAGE_BUCKET_SIZE} keys
+ * by a first hash. Buckets are then placed from the largest to the smallest:
+ * for every bucket the smallest displacement {@code d} is searched for which
+ * the keys of the bucket hash to distinct free slots under
+ * {@code hash(key, d)}. Buckets of a single key are put straight into one of
+ * the remaining free slots, which is stored as a negative displacement. Every
+ * slot ends up holding exactly one key, so the storage is two dense arrays
+ * plus one {@code int} per bucket, and {@code get} reads one displacement and
+ * probes exactly one slot. With compressed references that is under 10 bytes
+ * per entry besides the keys and values themselves, against about 40 for an
+ * entry object and its bucket reference in the chained tables.
+ * <p>
+ * The hash functions are derived from {@code hashCode}, so keys with equal hash
+ * codes can't be told apart by them. Such keys share one slot holding a small
+ * array of them, which is scanned; tables of keys with distinct hash codes
+ * never need it.
+ * <p>
+ * All updating methods throw {@link UnsupportedOperationException}. The table
+ * can be read by any number of threads once it has been safely published.
+ */
+public final class PerfectHashTable<K, V> implements Hashable<K, V> {
+
+    private static final int AVERAGE_BUCKET_SIZE = 3;
+
+    //Keys and values of a slot shared by keys with equal hash codes
+    private static final class Collision {
+        final Object[] keys;
+        final Object[] values;
+
+        Collision(Object[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    private final int count;
+    //Displacement of every bucket, or -(slot + 1) for a bucket placed directly
+    private final int[] displacements;
+    //A key or a Collision per slot, and the matching value
+    private final Object[] keys;
+    private final Object[] values;
+
+    private PerfectHashTable(int count, int[] displacements, Object[] keys, Object[] values) {
+        this.count = count;
+        this.displacements = displacements;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Builds a table mapping {@code keys[i]} to {@code values[i]}. A key that
+     * occurs several times ends up mapped to its last value.
+     *
+     * @throws IllegalArgumentException if the arrays have different lengths
+     * @throws NullPointerException     if a key or value is null
+     */
+    public static <K, V> PerfectHashTable<K, V> of(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values have different lengths");
+        }
+        Map<K, V> mappings = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            checkNotNull(keys[i], values[i]);
+            mappings.put(keys[i], values[i]);
+        }
+        return build(mappings);
+    }
+
+    /**
+     * Builds a table holding the mappings of the given keys in the source,
+     * e.g. {@code copyOf(table, table.keys())} for a
+     * {@link NodeBasedHashTableSeparateChaining} or {@code copyOf(table, table)}
+     * for a {@link ListBasedHashTableSeparateChaining}. Keys the source has no
+     * value for are left out.
+     */
+    public static <K, V> PerfectHashTable<K, V> copyOf(Hashable<K, V> source, Iterable<K> keys) {
+        Map<K, V> mappings = new HashMap<>();
+        for (K key : keys) {
+            V value = source.get(key);
+            if (value != null) {
+                mappings.put(key, value);
+            }
+        }
+        return build(mappings);
+    }
+
+    private static <K, V> PerfectHashTable<K, V> build(Map<K, V> mappings) {
+        int n = mappings.size();
+        Object[] allKeys = new Object[n];
+        Object[] allValues = new Object[n];
+        //Hash code in the high half, index in the low half, so sorting groups equal hash codes
+        long[] byHash = new long[n];
+        int index = 0;
+        for (Map.Entry<K, V> entry : mappings.entrySet()) {
+            allKeys[index] = entry.getKey();
+            allValues[index] = entry.getValue();
+            byHash[index] = (long) entry.getKey().hashCode() << 32 | index;
+            index++;
+        }
+        Arrays.sort(byHash);
+
+        //Keys with equal hash codes are stored together, so the distinct hash codes are what gets placed.
+        //The keys of the i-th distinct hash code are byHash[groupStart[i] .. groupStart[i + 1])
+        int[] groupStart = new int[n + 1];
+        int[] groupHashes = new int[n];
+        int slots = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || (int) (byHash[i] >> 32) != (int) (byHash[i - 1] >> 32)) {
+                groupHashes[slots] = (int) (byHash[i] >> 32);
+                groupStart[slots++] = i;
+            }
+        }
+        groupStart[slots] = n;
+
+        int bucketCount = Math.max(1, (slots + AVERAGE_BUCKET_SIZE - 1) / AVERAGE_BUCKET_SIZE);
+
+        //Counting sort of the hash codes by bucket: bucket b owns hashes[start[b] .. start[b + 1])
+        int[] start = new int[bucketCount + 1];
+        for (int g = 0; g < slots; g++) {
+            start[bucketOf(groupHashes[g], bucketCount) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            maxBucketSize = Math.max(maxBucketSize, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] groups = new int[slots];
+        int[] fill = Arrays.copyOf(start, bucketCount);
+        for (int g = 0; g < slots; g++) {
+            groups[fill[bucketOf(groupHashes[g], bucketCount)]++] = g;
+        }
+
+        //Buckets from the largest to the smallest, again by counting sort
+        int[] bySize = new int[maxBucketSize + 2];
+        for (int b = 0; b < bucketCount; b++) {
+            bySize[maxBucketSize - (start[b + 1] - start[b]) + 1]++;
+        }
+        for (int i = 1; i < bySize.length; i++) {
+            bySize[i] += bySize[i - 1];
+        }
+        int[] order = new int[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            order[bySize[maxBucketSize - (start[b + 1] - start[b])]++] = b;
+        }
+
+        int[] displacements = new int[bucketCount];
+        int[] slotGroups = new int[slots];
+        boolean[] taken = new boolean[slots];
+        int[] candidate = new int[maxBucketSize];
+        int nextFree = 0;
+
+        for (int bucket : order) {
+            int from = start[bucket], size = start[bucket + 1] - from;
+            if (size > 1) {
+                int d = findDisplacement(groupHashes, groups, from, size, slots, taken, candidate);
+                for (int i = 0; i < size; i++) {
+                    taken[candidate[i]] = true;
+                    slotGroups[candidate[i]] = groups[from + i];
+                }
+                displacements[bucket] = d;
+            } else if (size == 1) {
+                while (taken[nextFree]) nextFree++;
+                taken[nextFree] = true;
+                slotGroups[nextFree] = groups[from];
+                displacements[bucket] = -(nextFree + 1);
+            }
+        }
+
+        Object[] keys = new Object[slots];
+        Object[] values = new Object[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            int from = groupStart[slotGroups[slot]], size = groupStart[slotGroups[slot] + 1] - from;
+            if (size == 1) {
+                keys[slot] = allKeys[(int) byHash[from]];
+                values[slot] = allValues[(int) byHash[from]];
+            } else {
+                Object[] groupKeys = new Object[size];
+                Object[] groupValues = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    groupKeys[i] = allKeys[(int) byHash[from + i]];
+                    groupValues[i] = allValues[(int) byHash[from + i]];
+                }
+                keys[slot] = new Collision(groupKeys, groupValues);
+            }
+        }
+        return new PerfectHashTable<>(n, displacements, keys, values);
+    }
+
+    /**
+     * Tries displacements from 0 on until the hash codes of
+     * {@code groups[from .. from + size)} land in distinct free slots, which are
+     * left in {@code slots}.
+     */
+    private static int findDisplacement(int[] groupHashes, int[] groups, int from, int size,
+                                        int slotCount, boolean[] taken, int[] slots) {
+        for (int d = 0; d >= 0; d++) {
+            boolean fits = true;
+            for (int i = 0; i < size && fits; i++) {
+                int slot = slotOf(groupHashes[groups[from + i]], d, slotCount);
+                fits = !taken[slot];
+                for (int j = 0; j < i && fits; j++) {
+                    fits = slots[j] != slot;
+                }
+                slots[i] = slot;
+            }
+            if (fits) {
+                return d;
+            }
+        }
+        throw new IllegalStateException("No displacement found");
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Table is immutable");
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] instanceof Collision) {
+                for (Object v : ((Collision) keys[slot]).values) {
+                    if (value.equals(v)) return true;
+                }
+            } else if (value.equals(values[slot])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+        if (keys.length == 0) {
+            return null;
+        }
+
+        int hash = key.hashCode();
+        int d = displacements[bucketOf(hash, displacements.length)];
+        int slot = d < 0 ? -d - 1 : slotOf(hash, d, keys.length);
+        Object k = keys[slot];
+        if (k instanceof Collision) {
+            Collision collision = (Collision) k;
+            for (int i = 0; i < collision.keys.length; i++) {
+                if (key.equals(collision.keys[i])) return (V) collision.values[i];
+            }
+            return null;
+        }
+        return key.equals(k) ? (V) values[slot] : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException("Table is immutable");
+    }
+
+    @Override
+    public V remove(K key) {
+        throw new UnsupportedOperationException("Table is immutable");
+    }
+
+    private static int bucketOf(int hash, int bucketCount) {
+        return reduce(mix(hash), bucketCount);
+    }
+
+    private static int slotOf(int hash, int displacement, int slotCount) {
+        return reduce(mix(hash ^ (displacement + 1) * 0x9E3779B9), slotCount);
+    }
+
+    //Maps a 32 bit hash onto [0, n) without a division
+    private static int reduce(int hash, int n) {
+        return (int) (((hash & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+    //murmur3 finalizer, so that every bit of the input affects the high bits reduce() uses
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static void checkNotNull(Object key, Object value) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] instanceof Collision) {
+                Collision collision = (Collision) keys[slot];
+                for (int i = 0; i < collision.keys.length; i++) {
+                    sb.append(collision.keys[i]).append(" => ").append(collision.values[i]).append(", ");
+                }
+            } else {
+                sb.append(keys[slot]).append(" => ").append(values[slot]).append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        NodeBasedHashTableSeparateChaining<TestKey, TestValue> source = new NodeBasedHashTableSeparateChaining<>();
+
+        for (int i = 0; i < 20; i++) {
+            source.put(new TestKey(i), new TestValue(i));
+        }
+
+        source.put(new TestKey(0), new TestValue(199));
+
+        PerfectHashTable<TestKey, TestValue> custom = PerfectHashTable.copyOf(source, source.keys());
+
+        System.out.println(custom);
+
+        System.out.println("Is empty: " + custom.isEmpty());
+        System.out.println("Count: " + custom.size());
+        System.out.println("GET: " + custom.get(new TestKey(19)));
+        System.out.println("Contains key 14: " + custom.containsKey(new TestKey(14)));
+        System.out.println("ContainsValue 17: " + custom.containsValue(new TestValue(17)));
+        System.out.println("Contains key 42: " + custom.containsKey(new TestKey(42)));
+
+        Integer[] keys = new Integer[20];
+        String[] values = new String[20];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 1000;
+            values[i] = "Value:" + i;
+        }
+        System.out.println(PerfectHashTable.of(keys, values));
+    }
+}
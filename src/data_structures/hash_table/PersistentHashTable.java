@@ -0,0 +1,509 @@
+package data_structures.hash_table;
+
+import data_structures.hash_table.test_data.TestKey;
+import data_structures.hash_table.test_data.TestValue;
+
+import java.util.Arrays;
+
+/**
+ * Hash table backed by a persistent hash array mapped trie (HAMT), with
+ * {@link #snapshot()} in constant time.
+ * <p>
+ * The trie branches on 5 bits of the hash per level. A node has two bitmaps,
+ * one of the branches holding a key/value pair inline and one of the branches
+ * holding a child node, and a single array with the pairs at the front and the
+ * children at the back (the CHAMP layout). Keys whose hashes are equal in all
+ * 32 bits end up together in a collision node.
+ * <p>
+ * Nodes are never modified once published. An update copies the path from the
+ * root to the changed node, at most 7 nodes, and publishes the new root and
+ * size as a new {@link Snapshot} through a volatile field. A snapshot is
+ * therefore just the current version, taken without copying or locking, and
+ * stays unchanged while the writer goes on. Any number of threads may read
+ * this table or its snapshots; updates must come from a single writer thread
+ * at a time.
+ */
+public class PersistentHashTable<K, V> implements Hashable<K, V> {
+
+    private static final int BITS = 5;
+    private static final int BRANCH_MASK = (1 << BITS) - 1;
+
+    private volatile Snapshot<K, V> current = Snapshot.empty();
+
+    /**
+     * Immutable version of the table. Updating methods throw
+     * {@link UnsupportedOperationException}.
+     */
+    public static final class Snapshot<K, V> implements Hashable<K, V> {
+
+        private static final Snapshot<?, ?> EMPTY = new Snapshot<>(BitmapNode.EMPTY, 0);
+
+        private final Node root;
+        private final int count;
+
+        private Snapshot(Node root, int count) {
+            this.root = root;
+            this.count = count;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K, V> Snapshot<K, V> empty() {
+            return (Snapshot<K, V>) EMPTY;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("Snapshot is immutable");
+        }
+
+        @Override
+        public boolean containsKey(K key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public boolean containsValue(V value) {
+            checkValueNotNull(value);
+            return root.containsValue(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(K key) {
+            checkKeyNotNull(key);
+            return (V) root.find(key, hash(key), 0);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            throw new UnsupportedOperationException("Snapshot is immutable");
+        }
+
+        @Override
+        public V remove(K key) {
+            throw new UnsupportedOperationException("Snapshot is immutable");
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            root.appendTo(sb);
+            sb.append("}");
+            return sb.toString();
+        }
+    }
+
+    //Outcome of an update, filled in while the path is copied
+    private static final class Change {
+        Object oldValue;
+        boolean added;
+    }
+
+    private abstract static class Node {
+
+        abstract Object find(Object key, int hash, int shift);
+
+        abstract Node put(Object key, Object value, int hash, int shift, Change change);
+
+        abstract Node remove(Object key, int hash, int shift, Change change);
+
+        abstract boolean containsValue(Object value);
+
+        //Whether the node holds one pair and no children, so the parent can inline it
+        abstract boolean isSingleEntry();
+
+        abstract Object firstKey();
+
+        abstract Object firstValue();
+
+        abstract void appendTo(StringBuilder sb);
+    }
+
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+        final int dataMap;
+        final int nodeMap;
+        //key0, value0, key1, value1, ..., child(n-1), ..., child0
+        final Object[] content;
+
+        BitmapNode(int dataMap, int nodeMap, Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        private int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        private int nodeIndex(int bit) {
+            return content.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                return key.equals(content[i]) ? content[i + 1] : null;
+            }
+            if ((nodeMap & bit) != 0) {
+                return ((Node) content[nodeIndex(bit)]).find(key, hash, shift + BITS);
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, Change change) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                Object k = content[i];
+                if (key.equals(k)) {
+                    change.oldValue = content[i + 1];
+                    Object[] copy = content.clone();
+                    copy[i + 1] = value;
+                    return new BitmapNode(dataMap, nodeMap, copy);
+                }
+                change.added = true;
+                Node child = merge(k, content[i + 1], hash(k), key, value, hash, shift + BITS);
+                return migrateToNode(bit, i, child);
+            }
+            if ((nodeMap & bit) != 0) {
+                int i = nodeIndex(bit);
+                Node child = ((Node) content[i]).put(key, value, hash, shift + BITS, change);
+                Object[] copy = content.clone();
+                copy[i] = child;
+                return new BitmapNode(dataMap, nodeMap, copy);
+            }
+
+            change.added = true;
+            int i = 2 * dataIndex(bit);
+            Object[] copy = new Object[content.length + 2];
+            System.arraycopy(content, 0, copy, 0, i);
+            copy[i] = key;
+            copy[i + 1] = value;
+            System.arraycopy(content, i, copy, i + 2, content.length - i);
+            return new BitmapNode(dataMap | bit, nodeMap, copy);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift, Change change) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                if (!key.equals(content[i])) {
+                    return this;
+                }
+                change.oldValue = content[i + 1];
+                Object[] copy = new Object[content.length - 2];
+                System.arraycopy(content, 0, copy, 0, i);
+                System.arraycopy(content, i + 2, copy, i, content.length - i - 2);
+                return new BitmapNode(dataMap ^ bit, nodeMap, copy);
+            }
+            if ((nodeMap & bit) != 0) {
+                int i = nodeIndex(bit);
+                Node child = ((Node) content[i]).remove(key, hash, shift + BITS, change);
+                if (change.oldValue == null) {
+                    return this;
+                }
+                if (child.isSingleEntry()) {
+                    return migrateToInline(bit, i, child.firstKey(), child.firstValue());
+                }
+                Object[] copy = content.clone();
+                copy[i] = child;
+                return new BitmapNode(dataMap, nodeMap, copy);
+            }
+            return this;
+        }
+
+        //Replaces the pair at content[i] with a child node for the same branch
+        private Node migrateToNode(int bit, int i, Node child) {
+            int target = nodeIndex(bit) - 1;
+            Object[] copy = new Object[content.length - 1];
+            System.arraycopy(content, 0, copy, 0, i);
+            System.arraycopy(content, i + 2, copy, i, target - i);
+            copy[target] = child;
+            System.arraycopy(content, target + 2, copy, target + 1, content.length - target - 2);
+            return new BitmapNode(dataMap ^ bit, nodeMap | bit, copy);
+        }
+
+        //Replaces the child at content[i] with the single pair it holds
+        private Node migrateToInline(int bit, int i, Object key, Object value) {
+            int target = 2 * dataIndex(bit);
+            Object[] copy = new Object[content.length + 1];
+            System.arraycopy(content, 0, copy, 0, target);
+            copy[target] = key;
+            copy[target + 1] = value;
+            System.arraycopy(content, target, copy, target + 2, i - target);
+            System.arraycopy(content, i + 1, copy, i + 2, content.length - i - 1);
+            return new BitmapNode(dataMap | bit, nodeMap ^ bit, copy);
+        }
+
+        @Override
+        boolean containsValue(Object value) {
+            int pairs = Integer.bitCount(dataMap);
+            for (int i = 0; i < pairs; i++) {
+                if (value.equals(content[2 * i + 1])) return true;
+            }
+            for (int i = 2 * pairs; i < content.length; i++) {
+                if (((Node) content[i]).containsValue(value)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean isSingleEntry() {
+            return nodeMap == 0 && Integer.bitCount(dataMap) == 1;
+        }
+
+        @Override
+        Object firstKey() {
+            return content[0];
+        }
+
+        @Override
+        Object firstValue() {
+            return content[1];
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            int pairs = Integer.bitCount(dataMap);
+            for (int i = 0; i < pairs; i++) {
+                sb.append(content[2 * i]).append(" => ").append(content[2 * i + 1]).append(", ");
+            }
+            for (int i = 2 * pairs; i < content.length; i++) {
+                ((Node) content[i]).appendTo(sb);
+            }
+        }
+    }
+
+    //Keys whose hashes are equal in all 32 bits, stored as key0, value0, key1, value1, ...
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+        final Object[] content;
+
+        CollisionNode(int hash, Object[] content) {
+            this.hash = hash;
+            this.content = content;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < content.length; i += 2) {
+                if (key.equals(content[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int i = indexOf(key);
+            return i >= 0 ? content[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, Change change) {
+            int i = indexOf(key);
+            Object[] copy;
+            if (i >= 0) {
+                change.oldValue = content[i + 1];
+                copy = content.clone();
+            } else {
+                change.added = true;
+                i = content.length;
+                copy = Arrays.copyOf(content, content.length + 2);
+                copy[i] = key;
+            }
+            copy[i + 1] = value;
+            return new CollisionNode(this.hash, copy);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift, Change change) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            change.oldValue = content[i + 1];
+            Object[] copy = new Object[content.length - 2];
+            System.arraycopy(content, 0, copy, 0, i);
+            System.arraycopy(content, i + 2, copy, i, content.length - i - 2);
+            return new CollisionNode(this.hash, copy);
+        }
+
+        @Override
+        boolean containsValue(Object value) {
+            for (int i = 1; i < content.length; i += 2) {
+                if (value.equals(content[i])) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean isSingleEntry() {
+            return content.length == 2;
+        }
+
+        @Override
+        Object firstKey() {
+            return content[0];
+        }
+
+        @Override
+        Object firstValue() {
+            return content[1];
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            for (int i = 0; i < content.length; i += 2) {
+                sb.append(content[i]).append(" => ").append(content[i + 1]).append(", ");
+            }
+        }
+    }
+
+    //Builds the smallest subtree holding two pairs whose hashes agree below `shift`
+    private static Node merge(Object key0, Object value0, int hash0,
+                              Object key1, Object value1, int hash1, int shift) {
+        if (shift >= Integer.SIZE) {
+            return new CollisionNode(hash0, new Object[]{key0, value0, key1, value1});
+        }
+        int branch0 = (hash0 >>> shift) & BRANCH_MASK;
+        int branch1 = (hash1 >>> shift) & BRANCH_MASK;
+        if (branch0 == branch1) {
+            Node child = merge(key0, value0, hash0, key1, value1, hash1, shift + BITS);
+            return new BitmapNode(0, 1 << branch0, new Object[]{child});
+        }
+        Object[] content = branch0 < branch1
+                ? new Object[]{key0, value0, key1, value1}
+                : new Object[]{key1, value1, key0, value0};
+        return new BitmapNode(1 << branch0 | 1 << branch1, 0, content);
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & BRANCH_MASK);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the current version of the table. It takes constant time and
+     * the snapshot never changes, whatever is done to the table afterwards.
+     */
+    public Snapshot<K, V> snapshot() {
+        return current;
+    }
+
+    @Override
+    public int size() {
+        return current.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        current = Snapshot.empty();
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return current.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return current.containsValue(value);
+    }
+
+    @Override
+    public V get(K key) {
+        return current.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        checkValueNotNull(value);
+        checkKeyNotNull(key);
+
+        Snapshot<K, V> version = current;
+        Change change = new Change();
+        Node root = version.root.put(key, value, hash(key), 0, change);
+        current = new Snapshot<>(root, change.added ? version.count + 1 : version.count);
+        return (V) change.oldValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        checkKeyNotNull(key);
+
+        Snapshot<K, V> version = current;
+        Change change = new Change();
+        Node root = version.root.remove(key, hash(key), 0, change);
+        if (change.oldValue != null) {
+            current = new Snapshot<>(root, version.count - 1);
+        }
+        return (V) change.oldValue;
+    }
+
+    private static void checkKeyNotNull(Object key) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+    }
+
+    private static void checkValueNotNull(Object value) {
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+
+    public static void main(String[] args) {
+        PersistentHashTable<TestKey, TestValue> custom = new PersistentHashTable<>();
+
+        for (int i = 0; i < 20; i++) {
+            custom.put(new TestKey(i), new TestValue(i));
+        }
+
+        Snapshot<TestKey, TestValue> before = custom.snapshot();
+
+        custom.put(new TestKey(0), new TestValue(199));
+
+        System.out.println(custom);
+
+        System.out.println("Is empty: " + custom.isEmpty());
+        System.out.println("Count: " + custom.size());
+        System.out.println("GET: " + custom.get(new TestKey(19)));
+        System.out.println("Contains key 14: " + custom.containsKey(new TestKey(14)));
+        System.out.println("ContainsValue 17: " + custom.containsValue(new TestValue(17)));
+        System.out.println("Removed value: " + custom.remove(new TestKey(0)));
+        System.out.println("Count: " + custom.size());
+
+        System.out.println(custom);
+        System.out.println("Snapshot GET 0: " + before.get(new TestKey(0)) + ", count: " + before.size());
+    }
+}
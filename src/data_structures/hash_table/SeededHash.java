@@ -0,0 +1,38 @@
+package data_structures.hash_table;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Seeded scrambling of hash codes, shared by the tables and caches that pick
+ * a bucket or a segment from {@code hashCode()}.
+ * <p>
+ * Each table or cache draws its own random seed when it's created and mixes
+ * it into every hash code before selecting a bucket. The bucket of a key then
+ * differs from instance to instance, so a set of keys that all land in one
+ * bucket can't be computed in advance (hash flooding). Keys with equal hash
+ * codes are not separated by any seed; that takes treeification or a hash
+ * over the key's content.
+ */
+public final class SeededHash {
+
+    private SeededHash() {
+    }
+
+    public static int newSeed() {
+        return ThreadLocalRandom.current().nextInt();
+    }
+
+    /**
+     * Combines the hash code with the seed and applies the murmur3 32 bit
+     * finalizer, so every input bit affects every output bit and both the
+     * low bits (remainder, mask) and the high bits (segment shift) are usable.
+     */
+    public static int scramble(int hash, int seed) {
+        int h = hash ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
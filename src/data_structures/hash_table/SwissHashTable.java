@@ -0,0 +1,324 @@
+package data_structures.hash_table;
+
+import data_structures.hash_table.test_data.TestKey;
+import data_structures.hash_table.test_data.TestValue;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table in the style of Abseil's "Swiss table".
+ * <p>
+ * Next to the keys and values, every slot has a control byte: the high bit is
+ * set for an empty slot ({@code 0x80}) or a deleted one ({@code 0xFE}), and a
+ * full slot stores the low 7 bits of its key's hash. Slots are grouped by 8 and
+ * the control bytes of a group are packed into one {@code long}, so a lookup
+ * compares all 8 control bytes with the hash at once and calls {@code equals}
+ * only on the slots whose byte matched; with 7 bits that is a false match in
+ * 1 of 128 slots. A group that has an empty slot ends the probe, so most
+ * misses are answered by a single group without touching any key.
+ * <p>
+ * Groups are probed in triangular order, which visits every group of a power
+ * of two table. Removal marks the slot deleted, unless its group has an empty
+ * slot, which means no probe ever went past the group and the slot can be
+ * emptied. Deleted slots are reused by insertions and cleaned up by rehashing.
+ */
+public class SwissHashTable<K, V> implements Hashable<K, V> {
+
+    private static final int GROUP_SIZE = 8;
+    private static final int GROUP_SHIFT = 3;
+
+    private static final long EMPTY = 0x80;
+    private static final long DELETED = 0xFE;
+
+    //Lowest and highest bit of every byte of a group
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+    private static final long EMPTY_GROUP = EMPTY * LSBS;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] control;
+    private K[] keys;
+    private V[] values;
+    private int groupMask;
+    private int count = 0;
+    //Number of empty slots that can still be filled before the table is rehashed
+    private int growthLeft;
+
+    public SwissHashTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SwissHashTable(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        allocate(tableSizeFor(capacity));
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(control, EMPTY_GROUP);
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        count = 0;
+        growthLeft = maxLoad(keys.length);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        checkKeyNotNull(key);
+        return find(key, hash(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        checkValueNotNull(value);
+        for (V v : values) {
+            if (value.equals(v)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V get(K key) {
+        checkKeyNotNull(key);
+        int slot = find(key, hash(key));
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkValueNotNull(value);
+        checkKeyNotNull(key);
+
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            V old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+
+        slot = findInsertSlot(hash);
+        if (growthLeft == 0 && controlAt(slot) == EMPTY) {
+            rehash();
+            slot = findInsertSlot(hash);
+        }
+        insert(slot, hash, key, value);
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        checkKeyNotNull(key);
+
+        int slot = find(key, hash(key));
+        if (slot < 0) {
+            return null;
+        }
+
+        V old = values[slot];
+        keys[slot] = null;
+        values[slot] = null;
+        if (matchEmpty(control[slot >>> GROUP_SHIFT]) != 0) {
+            setControl(slot, EMPTY);
+            growthLeft++;
+        } else {
+            setControl(slot, DELETED);
+        }
+        count--;
+        return old;
+    }
+
+    //Returns the slot holding the key or -1 if the key is absent
+    private int find(K key, int hash) {
+        long h2 = h2(hash);
+        int group = h1(hash) & groupMask;
+        for (int step = 1; ; step++) {
+            long word = control[group];
+            for (long matches = match(word, h2); matches != 0; matches &= matches - 1) {
+                int slot = (group << GROUP_SHIFT) + (Long.numberOfTrailingZeros(matches) >>> 3);
+                if (key.equals(keys[slot])) {
+                    return slot;
+                }
+            }
+            if (matchEmpty(word) != 0) {
+                return -1;
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    //Returns the first empty or deleted slot on the probe sequence of the hash
+    private int findInsertSlot(int hash) {
+        int group = h1(hash) & groupMask;
+        for (int step = 1; ; step++) {
+            long free = control[group] & MSBS;
+            if (free != 0) {
+                return (group << GROUP_SHIFT) + (Long.numberOfTrailingZeros(free) >>> 3);
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    private void insert(int slot, int hash, K key, V value) {
+        if (controlAt(slot) == EMPTY) {
+            growthLeft--;
+        }
+        setControl(slot, h2(hash));
+        keys[slot] = key;
+        values[slot] = value;
+        count++;
+    }
+
+    /**
+     * Rebuilds the table once it runs out of empty slots. If deleted slots make
+     * up a large part of the used ones, the table is rehashed at the same size
+     * to get rid of them, otherwise it doubles.
+     */
+    private void rehash() {
+        int capacity = keys.length;
+        if (count >= maxLoad(capacity) / 2) {
+            if (capacity == MAXIMUM_CAPACITY) {
+                throw new IllegalStateException("Hash table is too large");
+            }
+            capacity *= 2;
+        }
+
+        long[] oldControl = control;
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(capacity);
+        count = 0;
+
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if ((controlByte(oldControl, slot) & EMPTY) == 0) {
+                int hash = hash(oldKeys[slot]);
+                insert(findInsertSlot(hash), hash, oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        control = new long[capacity >>> GROUP_SHIFT];
+        Arrays.fill(control, EMPTY_GROUP);
+        keys = (K[]) new Object[capacity];
+        values = (V[]) new Object[capacity];
+        groupMask = control.length - 1;
+        growthLeft = maxLoad(capacity);
+    }
+
+    //The table is kept at most 7/8 full
+    private static int maxLoad(int capacity) {
+        return capacity - capacity / 8;
+    }
+
+    private long controlAt(int slot) {
+        return controlByte(control, slot);
+    }
+
+    private static long controlByte(long[] control, int slot) {
+        return (control[slot >>> GROUP_SHIFT] >>> ((slot & (GROUP_SIZE - 1)) << 3)) & 0xFF;
+    }
+
+    private void setControl(int slot, long value) {
+        int shift = (slot & (GROUP_SIZE - 1)) << 3;
+        int group = slot >>> GROUP_SHIFT;
+        control[group] = control[group] & ~(0xFFL << shift) | value << shift;
+    }
+
+    /**
+     * Returns a word with the high bit set in every byte of the group equal to
+     * {@code h2}. Bytes above a real match may match falsely, which only costs
+     * an extra {@code equals}.
+     */
+    private static long match(long word, long h2) {
+        long x = word ^ (h2 * LSBS);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    //EMPTY is the only control byte with the high bit set and bit 1 clear
+    private static long matchEmpty(long word) {
+        return word & ~(word << 6) & MSBS;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    //Selects the group the probe starts from
+    private static int h1(int hash) {
+        return hash >>> 7;
+    }
+
+    //Fingerprint stored in the control byte
+    private static long h2(int hash) {
+        return hash & 0x7F;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        //At least two groups, so a full group never has nowhere to probe
+        int size = Math.max(capacity + capacity / 7, 2 * GROUP_SIZE);
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private void checkKeyNotNull(K key) {
+        if (key == null) throw new NullPointerException("Nullable keys is not allowed");
+    }
+
+    private void checkValueNotNull(V value) {
+        if (value == null) throw new NullPointerException("Nullable values is not allowed");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                sb.append(keys[i]).append(" => ").append(values[i]).append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        SwissHashTable<TestKey, TestValue> custom = new SwissHashTable<>(3);
+
+        for (int i = 0; i < 20; i++) {
+            custom.put(new TestKey(i), new TestValue(i));
+        }
+
+        custom.put(new TestKey(0), new TestValue(199));
+
+        System.out.println(custom);
+
+        System.out.println("Is empty: " + custom.isEmpty());
+        System.out.println("Count: " + custom.size());
+        System.out.println("GET: " + custom.get(new TestKey(19)));
+        System.out.println("Contains key 14: " + custom.containsKey(new TestKey(14)));
+        System.out.println("ContainsValue 17: " + custom.containsValue(new TestValue(17)));
+        System.out.println("Removed value: " + custom.remove(new TestKey(0)));
+        System.out.println("Count: " + custom.size());
+
+        System.out.println(custom);
+    }
+}
@@ -0,0 +1,132 @@
+package data_structures.hash_table.benchmark;
+
+import data_structures.hash_table.Hashable;
+import data_structures.hash_table.ListBasedHashTableSeparateChaining;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+
+/**
+ * Compares the allocation rate of the inline array buckets of
+ * {@link ListBasedHashTableSeparateChaining} with the {@code java.util.LinkedList}
+ * buckets it used before (kept below as {@link LinkedListBuckets}, reduced to
+ * {@code put} and {@code get}).
+ * <p>
+ * Allocated bytes are read from the HotSpot specific
+ * {@code com.sun.management.ThreadMXBean}. The numbers include everything the
+ * measured loop allocates, so the {@code Integer} keys and values are created
+ * before the measurement starts. Once C2 kicks in, escape analysis usually
+ * removes the {@code LinkedList} iterator of {@code get}; interpreted or C1
+ * compiled code still allocates it on every lookup.
+ */
+public class BucketAllocationBenchmark {
+
+    private static final int N = 200_000;
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    //The former bucket layout: an entry object per mapping kept in a LinkedList per bucket
+    @SuppressWarnings("unchecked")
+    private static class LinkedListBuckets<K, V> {
+
+        private static class Entry<K, V> {
+            final int hash;
+            final K key;
+            V value;
+
+            Entry(K key, V value) {
+                this.key = key;
+                this.value = value;
+                this.hash = key.hashCode();
+            }
+        }
+
+        private int capacity = 3, threshold = 2, size = 0;
+        private LinkedList<Entry<K, V>>[] table = new LinkedList[capacity];
+
+        V put(K key, V value) {
+            Entry<K, V> entry = new Entry<>(key, value);
+            int index = (entry.hash & 0x7FFFFFFF) % capacity;
+            LinkedList<Entry<K, V>> bucket = table[index];
+            if (bucket == null) table[index] = bucket = new LinkedList<>();
+            for (Entry<K, V> e : bucket) {
+                if (e.key.equals(key)) {
+                    V old = e.value;
+                    e.value = value;
+                    return old;
+                }
+            }
+            bucket.add(entry);
+            if (++size > threshold) resize();
+            return null;
+        }
+
+        V get(K key) {
+            LinkedList<Entry<K, V>> bucket = table[(key.hashCode() & 0x7FFFFFFF) % capacity];
+            if (bucket == null) return null;
+            for (Entry<K, V> e : bucket) if (e.key.equals(key)) return e.value;
+            return null;
+        }
+
+        private void resize() {
+            capacity *= 2;
+            threshold = (int) (capacity * 0.75);
+            LinkedList<Entry<K, V>>[] newTable = new LinkedList[capacity];
+            for (LinkedList<Entry<K, V>> bucket : table) {
+                if (bucket == null) continue;
+                for (Entry<K, V> e : bucket) {
+                    int index = (e.hash & 0x7FFFFFFF) % capacity;
+                    if (newTable[index] == null) newTable[index] = new LinkedList<>();
+                    newTable[index].add(e);
+                }
+            }
+            table = newTable;
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        Integer[] keys = new Integer[N];
+        for (int i = 0; i < N; i++) {
+            keys[i] = i * 31;
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+
+            LinkedListBuckets<Integer, Integer> lists = new LinkedListBuckets<>();
+            long putLists = allocated(() -> {
+                for (Integer key : keys) lists.put(key, key);
+            });
+            long getLists = allocated(() -> {
+                for (Integer key : keys) if (lists.get(key) != null) sink++;
+            });
+
+            Hashable<Integer, Integer> inline = new ListBasedHashTableSeparateChaining<>();
+            long putInline = allocated(() -> {
+                for (Integer key : keys) inline.put(key, key);
+            });
+            long getInline = allocated(() -> {
+                for (Integer key : keys) if (inline.get(key) != null) sink++;
+            });
+
+            if (report) {
+                System.out.printf("%-22s put: %7.1f B/op   get: %6.1f B/op%n",
+                        "LinkedList buckets", (double) putLists / N, (double) getLists / N);
+                System.out.printf("%-22s put: %7.1f B/op   get: %6.1f B/op%n",
+                        "Inline array buckets", (double) putInline / N, (double) getInline / N);
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static long allocated(Runnable body) {
+        long id = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(id);
+        body.run();
+        return THREADS.getThreadAllocatedBytes(id) - before;
+    }
+}
@@ -0,0 +1,179 @@
+package data_structures.hash_table.benchmark;
+
+import data_structures.hash_table.NodeBasedHashTableSeparateChaining;
+import data_structures.hash_table.SeededHash;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Measures what caching the key hash in the entries buys when keys are
+ * expensive to hash and to compare.
+ * <p>
+ * {@link NodeBasedHashTableSeparateChaining} keeps the key hash in every entry,
+ * reuses it on resize and compares it before calling {@code equals}. It's
+ * compared with the same table without the cached hash (kept below as
+ * {@link UncachedHashTable}, reduced to {@code put} and {@code get}), which
+ * rehashes every key on resize and calls {@code equals} on every key of the
+ * bucket. Both grow and select buckets the same way, so the difference is the
+ * cached hash alone. Besides the timings, the benchmark counts the
+ * {@code hashCode} and {@code equals} calls per operation, which shows the
+ * difference independently of the machine.
+ */
+public class CachedHashBenchmark {
+
+    private static final int N = 100_000;
+    private static final int KEY_LENGTH = 256;
+    private static final int ROUNDS = 5;
+
+    private static long hashCalls;
+    private static long equalsCalls;
+
+    /**
+     * Key over a long char sequence that, unlike {@code String}, doesn't cache
+     * its hash code. All keys share a long common prefix, so a mismatching
+     * {@code equals} has to scan most of it.
+     */
+    private static final class ExpensiveKey {
+        private final char[] chars;
+
+        ExpensiveKey(int id) {
+            chars = new char[KEY_LENGTH];
+            java.util.Arrays.fill(chars, 'x');
+            String suffix = Integer.toString(id);
+            suffix.getChars(0, suffix.length(), chars, KEY_LENGTH - suffix.length());
+        }
+
+        @Override
+        public int hashCode() {
+            hashCalls++;
+            int h = 0;
+            for (char c : chars) {
+                h = 31 * h + c;
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            equalsCalls++;
+            return o instanceof ExpensiveKey && java.util.Arrays.equals(chars, ((ExpensiveKey) o).chars);
+        }
+    }
+
+    //The node based table as it was before the key hash was cached: same
+    //capacity growth, seeded bucket index and head insertion, without treeification
+    @SuppressWarnings("unchecked")
+    private static class UncachedHashTable<K, V> {
+
+        private static class Entry<K, V> {
+            final K key;
+            V value;
+            Entry<K, V> next;
+
+            Entry(K key, V value, Entry<K, V> next) {
+                this.key = key;
+                this.value = value;
+                this.next = next;
+            }
+        }
+
+        private final int seed = SeededHash.newSeed();
+        private int capacity = 3, threshold = 2, count = 0;
+        private Entry<K, V>[] table = (Entry<K, V>[]) new Entry[capacity];
+
+        private int normalizeIndex(int hashCode, int capacity) {
+            int h = SeededHash.scramble(hashCode, seed);
+            return (h & 0x7FFFFFFF) % capacity;
+        }
+
+        V put(K key, V value) {
+            int index = normalizeIndex(key.hashCode(), capacity);
+            for (Entry<K, V> e = table[index]; e != null; e = e.next) {
+                if (e.key.equals(key)) {
+                    V old = e.value;
+                    e.value = value;
+                    return old;
+                }
+            }
+            if (count >= threshold) {
+                resizeTable(capacity * 2);
+                index = normalizeIndex(key.hashCode(), capacity);
+            }
+            table[index] = new Entry<>(key, value, table[index]);
+            count++;
+            return null;
+        }
+
+        V get(K key) {
+            for (Entry<K, V> e = table[normalizeIndex(key.hashCode(), capacity)]; e != null; e = e.next) {
+                if (e.key.equals(key)) {
+                    return e.value;
+                }
+            }
+            return null;
+        }
+
+        private void resizeTable(int newCapacity) {
+            Entry<K, V>[] oldTable = table;
+            capacity = newCapacity;
+            threshold = (int) (capacity * 0.75);
+            table = (Entry<K, V>[]) new Entry[capacity];
+            for (Entry<K, V> bucket : oldTable) {
+                Entry<K, V> e = bucket;
+                while (e != null) {
+                    Entry<K, V> next = e.next;
+                    int index = normalizeIndex(e.key.hashCode(), capacity);
+                    e.next = table[index];
+                    table[index] = e;
+                    e = next;
+                }
+            }
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        ExpensiveKey[] keys = new ExpensiveKey[N];
+        for (int i = 0; i < N; i++) {
+            keys[i] = new ExpensiveKey(i);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+            NodeBasedHashTableSeparateChaining<ExpensiveKey, Integer> cached = new NodeBasedHashTableSeparateChaining<>();
+            run("Cached key hash", cached::put, cached::get, keys, report);
+            UncachedHashTable<ExpensiveKey, Integer> uncached = new UncachedHashTable<>();
+            run("No cached hash", uncached::put, uncached::get, keys, report);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static void run(String name, BiConsumer<ExpensiveKey, Integer> put, Function<ExpensiveKey, Integer> get,
+                            ExpensiveKey[] keys, boolean report) {
+        hashCalls = equalsCalls = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < keys.length; i++) {
+            put.accept(keys[i], i);
+        }
+        long putNanos = System.nanoTime() - start;
+        long putHashes = hashCalls;
+        long putEquals = equalsCalls;
+
+        hashCalls = equalsCalls = 0;
+        start = System.nanoTime();
+        for (ExpensiveKey key : keys) {
+            sink += get.apply(key);
+        }
+        long getNanos = System.nanoTime() - start;
+
+        if (report) {
+            System.out.printf("%-16s put: %6.1f ns/op %5.2f hashCode/op %5.2f equals/op   "
+                            + "get: %6.1f ns/op %5.2f hashCode/op %5.2f equals/op%n",
+                    name,
+                    (double) putNanos / keys.length, (double) putHashes / keys.length, (double) putEquals / keys.length,
+                    (double) getNanos / keys.length, (double) hashCalls / keys.length, (double) equalsCalls / keys.length);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package data_structures.hash_table.benchmark;
+
+import data_structures.hash_table.ListBasedHashTableSeparateChaining;
+import data_structures.hash_table.NodeBasedHashTableSeparateChaining;
+import data_structures.lru_cache.LRUCache;
+
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Measures put/get throughput of the chained tables and of {@link LRUCache}
+ * under two hash flooding attacks, next to random keys.
+ * <ul>
+ * <li>Spread attack: keys with distinct hash codes built against the
+ * unseeded bucket index the tables used before. Every hash code is a
+ * positive multiple of {@code 3 << 16}, so the remainder by any capacity
+ * {@code 3 * 2^k} up to {@code k = 16} puts all of them into bucket 0 (see
+ * {@link UnseededTable}). The power of two mode can be flooded just as easily
+ * with keys whose upper and lower 16 bits are equal. {@code Integer} keys are
+ * used because their hash code is their value. The per-instance seed spreads
+ * these keys like random ones.</li>
+ * <li>Equal hash attack: strings made of {@code "Aa"} and {@code "BB"}
+ * blocks, which all have the same {@code String.hashCode()}. No seed mixed
+ * into the hash code can separate them, so they share one bucket in every
+ * structure. Only the node based table bounds it, by treeifying the bucket,
+ * since strings are {@code Comparable}; the list based table and the cache
+ * scan the whole bucket on every operation.</li>
+ * </ul>
+ */
+public class HashFloodingBenchmark {
+
+    //Keeps 3 * N << 16 positive and below 2^COLLIDING_BLOCKS
+    private static final int N = 10_000;
+    private static final int COLLIDING_BLOCKS = 14;
+    private static final int ROUNDS = 5;
+
+    //The former bucket selection, reduced to put and get over plain chains
+    private static class UnseededTable<K, V> {
+
+        private static class Entry<K, V> {
+            final K key;
+            V value;
+            final Entry<K, V> next;
+
+            Entry(K key, V value, Entry<K, V> next) {
+                this.key = key;
+                this.value = value;
+                this.next = next;
+            }
+        }
+
+        private Entry<K, V>[] table = newTable(3);
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        private static <K, V> Entry<K, V>[] newTable(int capacity) {
+            return (Entry<K, V>[]) new Entry[capacity];
+        }
+
+        void put(K key, V value) {
+            int index = (key.hashCode() & 0x7FFFFFFF) % table.length;
+            for (Entry<K, V> e = table[index]; e != null; e = e.next) {
+                if (e.key.equals(key)) {
+                    e.value = value;
+                    return;
+                }
+            }
+            table[index] = new Entry<>(key, value, table[index]);
+            if (++size > table.length * 3 / 4) resize();
+        }
+
+        V get(K key) {
+            for (Entry<K, V> e = table[(key.hashCode() & 0x7FFFFFFF) % table.length]; e != null; e = e.next) {
+                if (e.key.equals(key)) return e.value;
+            }
+            return null;
+        }
+
+        private void resize() {
+            Entry<K, V>[] newTable = newTable(table.length * 2);
+            for (Entry<K, V> bucket : table) {
+                for (Entry<K, V> e = bucket; e != null; e = e.next) {
+                    int index = (e.key.hashCode() & 0x7FFFFFFF) % newTable.length;
+                    newTable[index] = new Entry<>(e.key, e.value, newTable[index]);
+                }
+            }
+            table = newTable;
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        Object[] randomKeys = new Object[N];
+        Object[] attackKeys = new Object[N];
+        Object[] collidingKeys = new Object[N];
+        for (int i = 0; i < N; i++) {
+            randomKeys[i] = random.nextInt();
+            attackKeys[i] = 3 * (i + 1) << 16;
+            collidingKeys[i] = collidingString(i);
+        }
+        Object[][] keySets = {randomKeys, attackKeys, collidingKeys};
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+            run("Node based", NodeBasedHashTableSeparateChaining<Object, Object>::new,
+                    (table, key) -> table.put(key, key), (table, key) -> table.get(key), keySets, report);
+            run("List based", ListBasedHashTableSeparateChaining<Object, Object>::new,
+                    (table, key) -> table.put(key, key), (table, key) -> table.get(key), keySets, report);
+            run("LRU cache", () -> new LRUCache<Object, Object>(N),
+                    (cache, key) -> cache.put(key, key), (cache, key) -> cache.get(key), keySets, report);
+            run("Unseeded baseline", UnseededTable<Object, Object>::new,
+                    (table, key) -> table.put(key, key), (table, key) -> table.get(key), keySets, report);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    //Bit j of id picks "Aa" or "BB" for block j, both hash to 2112 so every result has the same hash code
+    private static String collidingString(int id) {
+        StringBuilder builder = new StringBuilder(2 * COLLIDING_BLOCKS);
+        for (int j = 0; j < COLLIDING_BLOCKS; j++) {
+            builder.append((id >>> j & 1) == 0 ? "Aa" : "BB");
+        }
+        return builder.toString();
+    }
+
+    private static <T> void run(String name, Supplier<T> factory, BiConsumer<T, Object> put,
+                                BiFunction<T, Object, Object> get, Object[][] keySets, boolean report) {
+        double[] results = new double[keySets.length];
+        for (int i = 0; i < keySets.length; i++) {
+            T target = factory.get();
+            long start = System.nanoTime();
+            for (Object key : keySets[i]) {
+                put.accept(target, key);
+            }
+            for (Object key : keySets[i]) {
+                if (get.apply(target, key) != null) sink++;
+            }
+            results[i] = (double) (System.nanoTime() - start) / (2 * keySets[i].length);
+        }
+        if (report) {
+            System.out.printf("%-18s random keys: %8.1f ns/op   spread attack: %8.1f ns/op   equal hash attack: %8.1f ns/op%n",
+                    name, results[0], results[1], results[2]);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package data_structures.hash_table.benchmark;
+
+import data_structures.hash_table.Hashable;
+import data_structures.hash_table.NodeBasedHashTableSeparateChaining;
+import data_structures.hash_table.test_data.TestKey;
+import data_structures.hash_table.test_data.TestValue;
+
+import java.util.function.IntFunction;
+
+/**
+ * Compares the per-lookup latency of the modulo based {@code normalizeIndex}
+ * with the power of two (spread + mask) mode of
+ * {@link NodeBasedHashTableSeparateChaining}.
+ * <p>
+ * This is a plain {@code System.nanoTime()} harness, run it with
+ * {@code java -server} and read the numbers as relative, not absolute.
+ * Every scenario is measured a few times and the best round is reported.
+ */
+public class NormalizeIndexBenchmark {
+
+    private static final int ROUNDS = 7;
+    private static final int LOOKUPS = 2_000_000;
+
+    // Only the high bits of the hash code differ. A mask without spreading
+    // would send every key into the same bucket, and the remainder by
+    // 3 * 2^k (capacity grows by doubling 3) uses just a few buckets too
+    private static class HighBitsKey {
+        final int val;
+
+        HighBitsKey(int val) {
+            this.val = val;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof HighBitsKey && ((HighBitsKey) o).val == val;
+        }
+
+        @Override
+        public int hashCode() {
+            return val << 16;
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        run("Integer keys", 100_000, Integer::valueOf);
+        run("High bits keys", 5_000, HighBitsKey::new);
+        // TestKey hashes into val % 2, so every lookup walks a chain of n / 2
+        run("TestKey (val % 2)", 1_000, TestKey::new);
+
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static <K> void run(String name, int n, IntFunction<K> keyFactory) {
+        Object[] keys = new Object[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = keyFactory.apply(i);
+        }
+
+        double modulo = measure(new NodeBasedHashTableSeparateChaining<>(3, 0.75, false), keys);
+        double mask = measure(new NodeBasedHashTableSeparateChaining<>(3, 0.75, true), keys);
+
+        System.out.printf("%-20s n=%-8d modulo: %7.2f ns/get   mask: %7.2f ns/get   speedup: %.2fx%n",
+                name, n, modulo, mask, modulo / mask);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> double measure(Hashable<K, TestValue> table, Object[] keys) {
+        TestValue value = new TestValue(1);
+        for (Object key : keys) {
+            table.put((K) key, value);
+        }
+
+        int lookups = Math.min(LOOKUPS, keys.length * 20);
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long hits = 0;
+            long start = System.nanoTime();
+            for (int i = 0, j = 0; i < lookups; i++) {
+                if (table.get((K) keys[j]) != null) hits++;
+                // Stride through the keys, so consecutive gets don't share a bucket
+                j += 7919;
+                while (j >= keys.length) j -= keys.length;
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += hits;
+            best = Math.min(best, (double) elapsed / lookups);
+        }
+        return best;
+    }
+}
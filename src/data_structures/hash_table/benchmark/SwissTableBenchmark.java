@@ -0,0 +1,68 @@
+package data_structures.hash_table.benchmark;
+
+import data_structures.hash_table.Hashable;
+import data_structures.hash_table.NodeBasedHashTableSeparateChaining;
+import data_structures.hash_table.SwissHashTable;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares read-heavy workloads on {@link SwissHashTable} and
+ * {@link NodeBasedHashTableSeparateChaining}: lookups of present keys, and
+ * lookups of absent keys, which the Swiss table usually answers from the
+ * control bytes of a single group.
+ * <p>
+ * Keys are random integers, so consecutive lookups land in unrelated buckets
+ * and the cache misses on the entries of the chained table are part of the
+ * result. Present keys are even and absent ones odd.
+ */
+public class SwissTableBenchmark {
+
+    private static final int N = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        Integer[] keys = new Integer[N];
+        Integer[] absent = new Integer[N];
+        for (int i = 0; i < N; i++) {
+            keys[i] = random.nextInt() & ~1;
+            absent[i] = random.nextInt() | 1;
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+            run("Swiss table", SwissHashTable::new, keys, absent, report);
+            run("Separate chaining", NodeBasedHashTableSeparateChaining::new, keys, absent, report);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static void run(String name, Supplier<Hashable<Integer, Integer>> factory,
+                            Integer[] keys, Integer[] absent, boolean report) {
+        Hashable<Integer, Integer> table = factory.get();
+        for (Integer key : keys) {
+            table.put(key, key);
+        }
+
+        long start = System.nanoTime();
+        for (Integer key : keys) {
+            sink += table.get(key);
+        }
+        long hitNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Integer key : absent) {
+            if (table.get(key) == null) sink++;
+        }
+        long missNanos = System.nanoTime() - start;
+
+        if (report) {
+            System.out.printf("%-18s hit: %6.1f ns/op   miss: %6.1f ns/op%n",
+                    name, (double) hitNanos / keys.length, (double) missNanos / absent.length);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package data_structures.hash_table.test_data;
 
-public class TestKey {
+public class TestKey implements Comparable<TestKey> {
 
     int val;
 
@@ -25,4 +25,9 @@ public class TestKey {
     public int hashCode() {
         return val % 2;
     }
+
+    @Override
+    public int compareTo(TestKey other) {
+        return Integer.compare(val, other.val);
+    }
 }
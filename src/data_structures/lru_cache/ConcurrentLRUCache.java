@@ -0,0 +1,395 @@
+package data_structures.lru_cache;
+
+import data_structures.hash_table.ConcurrentHashTable;
+import data_structures.hash_table.SeededHash;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe LRU cache split into independently locked segments, in the
+ * spirit of the segments of the Java 7 {@code ConcurrentHashMap}.
+ * <p>
+ * A key belongs to the segment selected by the high bits of its scrambled
+ * hash. The capacity is split exactly between the segments, so the cache
+ * never holds more than {@code capacity} entries. Every segment keeps its own
+ * recency list and evicts its own least recently used entry, so the cache as
+ * a whole is an approximation of a global LRU that gets exact with a single
+ * segment. Lookups go through a {@link ConcurrentHashTable} per
+ * segment and never lock; only the recency bookkeeping does.
+ * <p>
+ * Two ways to record that an entry was read:
+ * <ul>
+ * <li>By default {@code get} locks the segment and moves the entry to the
+ * head of its list, like {@link LRUCache} does. Readers of one segment
+ * serialize, readers of different segments don't.</li>
+ * <li>In read buffer mode {@code get} appends the entry to a small ring
+ * buffer, one of several stripes picked by the calling thread, and returns.
+ * The buffers are drained in a batch by whoever holds the segment lock next:
+ * a writer, or a reader that finds a buffer half full and manages to
+ * {@code tryLock} the segment. A hit never waits for the lock. When a buffer
+ * is full or its slot is contended the read is dropped, so the order of the
+ * list is a close approximation of the access order under heavy load, which
+ * is what a cache needs, rather than an exact one.</li>
+ * </ul>
+ * {@code put} always locks the segment. {@code size} is the sum of the
+ * segment counts and is weakly consistent. Nullable keys and values are not
+ * allowed.
+ */
+public class ConcurrentLRUCache<K, V> implements Lru<K, V> {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MAXIMUM_SEGMENTS = 1 << 16;
+    //Ring buffer slots per stripe, a power of two
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    //A reader tries to drain once this many reads are pending in its stripe
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+    private static final int MAXIMUM_READ_BUFFER_STRIPES = 16;
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        //Guarded by the segment lock
+        Node<K, V> prev;
+        Node<K, V> next;
+        boolean evicted;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=>" + value;
+        }
+    }
+
+    //Bounded multi producer ring buffer, consumed by the holder of the segment lock
+    private static final class ReadBuffer<K, V> {
+        final AtomicReferenceArray<Node<K, V>> slots = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+
+        //Returns the number of pending reads after the offer, or READ_BUFFER_SIZE when full
+        int offer(Node<K, V> node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long pending = tail - head;
+            if (pending >= READ_BUFFER_SIZE) {
+                return READ_BUFFER_SIZE;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & READ_BUFFER_MASK), node);
+                return (int) pending + 1;
+            }
+            //Lost the slot to another reader, drop this read
+            return (int) pending;
+        }
+
+        void drainTo(Segment<K, V> segment) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & READ_BUFFER_MASK);
+                Node<K, V> node = slots.get(index);
+                if (node == null) {
+                    //The slot is claimed but the node isn't published yet
+                    break;
+                }
+                slots.lazySet(index, null);
+                if (!node.evicted) {
+                    segment.setRecentlyUsed(node);
+                }
+            }
+            readCounter = head;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Segment<K, V> extends ReentrantLock {
+        final int capacity;
+        final ConcurrentHashTable<K, Node<K, V>> index = new ConcurrentHashTable<>();
+        final ReadBuffer<K, V>[] readBuffers;
+        volatile int count = 0;
+        Node<K, V> head;
+        Node<K, V> tail;
+
+        @SuppressWarnings("unchecked")
+        Segment(int capacity, int readBufferStripes) {
+            this.capacity = capacity;
+            readBuffers = (ReadBuffer<K, V>[]) new ReadBuffer[readBufferStripes];
+            for (int i = 0; i < readBufferStripes; i++) {
+                readBuffers[i] = new ReadBuffer<>();
+            }
+        }
+
+        V get(K key) {
+            Node<K, V> node = index.get(key);
+            if (node == null) {
+                return null;
+            }
+            V value = node.value;
+            if (readBuffers.length == 0) {
+                lock();
+                try {
+                    if (!node.evicted) {
+                        setRecentlyUsed(node);
+                    }
+                } finally {
+                    unlock();
+                }
+            } else {
+                recordRead(node);
+            }
+            return value;
+        }
+
+        private void recordRead(Node<K, V> node) {
+            int stripe = (int) Thread.currentThread().getId() & (readBuffers.length - 1);
+            int pending = readBuffers[stripe].offer(node);
+            if (pending >= READ_BUFFER_DRAIN_THRESHOLD && tryLock()) {
+                try {
+                    drainReadBuffers();
+                } finally {
+                    unlock();
+                }
+            }
+        }
+
+        void put(K key, V value) {
+            lock();
+            try {
+                drainReadBuffers();
+                Node<K, V> node = index.get(key);
+                if (node != null) {
+                    node.value = value;
+                    setRecentlyUsed(node);
+                    return;
+                }
+                if (count >= capacity) {
+                    removeLeastUsed();
+                }
+                node = new Node<>(key, value);
+                index.put(key, node);
+                node.next = head;
+                if (head == null) {
+                    tail = node;
+                } else {
+                    head.prev = node;
+                }
+                head = node;
+                count++;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                drainReadBuffers();
+                index.clear();
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    node.evicted = true;
+                }
+                head = null;
+                tail = null;
+                count = 0;
+            } finally {
+                unlock();
+            }
+        }
+
+        //Must hold the lock
+        void drainReadBuffers() {
+            for (ReadBuffer<K, V> buffer : readBuffers) {
+                buffer.drainTo(this);
+            }
+        }
+
+        //Must hold the lock
+        void setRecentlyUsed(Node<K, V> node) {
+            if (node.prev == null) {
+                return;
+            } else if (node.next == null) {
+                node.prev.next = null;
+                tail = node.prev;
+            } else {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = head;
+            head.prev = node;
+            head = node;
+        }
+
+        //Must hold the lock
+        private void removeLeastUsed() {
+            Node<K, V> t = tail;
+            index.remove(t.key);
+            t.evicted = true;
+            tail = t.prev;
+            if (tail == null) {
+                head = null;
+            } else {
+                tail.next = null;
+            }
+            t.prev = null;
+            count--;
+        }
+
+        void appendTo(StringBuilder sb) {
+            lock();
+            try {
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    if (sb.length() > 1) {
+                        sb.append(", ");
+                    }
+                    sb.append(node);
+                }
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    //Picks the segment of a key together with its hash code, see segmentFor
+    private final int seed = SeededHash.newSeed();
+
+    public ConcurrentLRUCache(int capacity) {
+        this(capacity, DEFAULT_CONCURRENCY_LEVEL, false);
+    }
+
+    /**
+     * @param concurrencyLevel number of segments, rounded down to a power of
+     *                         two and to at most one segment per entry
+     * @param readBuffer       when {@code true} reads are recorded in striped
+     *                         ring buffers and applied in batches instead of
+     *                         locking the segment on every hit
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLRUCache(int capacity, int concurrencyLevel, boolean readBuffer) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (concurrencyLevel < 1) throw new IllegalArgumentException("Invalid concurrency level: " + concurrencyLevel);
+
+        int segmentCount = Integer.highestOneBit(Math.min(Math.min(concurrencyLevel, capacity), MAXIMUM_SEGMENTS));
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        //Split exactly, the first capacity % segmentCount segments get one extra entry
+        int segmentCapacity = capacity / segmentCount;
+        int extra = capacity % segmentCount;
+        int stripes = readBuffer ? stripesFor(Runtime.getRuntime().availableProcessors()) : 0;
+
+        segments = (Segment<K, V>[]) new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentCapacity + (i < extra ? 1 : 0), stripes);
+        }
+    }
+
+    private static int stripesFor(int processors) {
+        int stripes = Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+        return Math.min(stripes, MAXIMUM_READ_BUFFER_STRIPES);
+    }
+
+    @Override
+    public int size() {
+        long n = 0;
+        for (Segment<K, V> segment : segments) {
+            n += segment.count;
+        }
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment<K, V> segment : segments) {
+            if (segment.count != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        checkKey(key);
+        return segmentFor(key).get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        checkKey(key);
+        checkValue(value);
+        segmentFor(key).put(key, value);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        //segmentShift is 32 for a single segment, which Java reduces to a shift by 0
+        return segments.length == 1 ? segments[0] : segments[SeededHash.scramble(key.hashCode(), seed) >>> segmentShift];
+    }
+
+    private void checkKey(K key) {
+        if (key == null) throw new IllegalArgumentException("Nullable key isn't supported");
+    }
+
+    private void checkValue(V value) {
+        if (value == null) throw new IllegalArgumentException("Nullable value isn't supported");
+    }
+
+    //Segments one after another, each from its most to its least recently used entry
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append("[");
+        for (Segment<K, V> segment : segments) {
+            segment.appendTo(sb);
+        }
+        return sb.append("]").toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Lru<Integer, Integer> cache = new ConcurrentLRUCache<>(1000, 8, true);
+
+        int threads = 8;
+        int perThread = 100_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    int key = random.nextInt(2000);
+                    if (cache.get(key) == null) {
+                        cache.put(key, key * 2);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        System.out.println("Count: " + cache.size());
+        cache.put(5000, 1);
+        System.out.println("GET 5000: " + cache.get(5000));
+
+        Lru<String, String> small = new ConcurrentLRUCache<>(2, 1, false);
+        small.put("Key0", "Value0");
+        small.put("Key1", "Value1");
+        small.get("Key0");
+        small.put("Key2", "Value2");
+        System.out.println(small);
+
+        cache.clear();
+        System.out.println("Count after clear: " + cache.size());
+    }
+}
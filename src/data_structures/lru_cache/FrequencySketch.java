@@ -0,0 +1,103 @@
+package data_structures.lru_cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Count-min sketch of 4-bit counters that estimates how often a key was seen
+ * recently, in the way of TinyLFU.
+ * <p>
+ * Every key has a counter in each of four rows and its estimate is the
+ * smallest of them, so collisions can only inflate an estimate. The rows are
+ * interleaved: the four counters of a key sit in four {@code long} words, at
+ * the nibbles selected by the low bits of its hash, and a word holds 16
+ * counters. Counters saturate at 15, which is enough to tell popular keys
+ * from the rest.
+ * <p>
+ * Aging: once the number of increments reaches the sample size (ten times the
+ * number of tracked keys) every counter is halved, so keys that were popular
+ * a while ago give way to the ones that are popular now.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    //Low bit of every counter, and every counter without its low bit before shifting right
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    //Random per sketch, so that keys colliding in every row can't be crafted up front
+    private final int seed = ThreadLocalRandom.current().nextInt();
+    private int additions = 0;
+
+    /**
+     * @param maximumSize number of keys the owner tracks, the table gets one
+     *                    word, i.e. 16 counters, per key
+     */
+    FrequencySketch(int maximumSize) {
+        int size = maximumSize >= MAXIMUM_TABLE_SIZE ? MAXIMUM_TABLE_SIZE
+                : Math.max(8, Integer.highestOneBit(Math.max(1, maximumSize) - 1) << 1);
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = (int) Math.min(10L * Math.max(1, maximumSize), Integer.MAX_VALUE);
+    }
+
+    int frequency(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    //Increments the counter at nibble j of word i unless it's saturated
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xFL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    //Halves every counter, the odd ones lose their remainder
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private int spread(int hashCode) {
+        int h = (hashCode ^ seed) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,18 +1,142 @@
 package data_structures.lru_cache;
 
+import data_structures.hash_table.SeededHash;
+
+import java.time.Duration;
+
+/**
+ * Least recently used cache: a doubly linked list ordered by recency, from
+ * {@code head} (most recent) to {@code tail} (next to evict), plus a chained
+ * index from key to list node.
+ * <p>
+ * The index is sized by the number of cached entries, not by {@code capacity}:
+ * it starts small and doubles whenever the entries exceed 3/4 of its buckets,
+ * so a large capacity costs nothing until it's used, and colliding keys share
+ * a bucket instead of replacing each other. Buckets are plain chains: a per
+ * cache seed spreads keys whose hash codes differ, but keys with equal hash
+ * codes, for instance strings chosen by a client to collide, share one chain
+ * that is scanned linearly, so the cache is not protected against them.
+ * <p>
+ * Entries can also expire, either a fixed time after they were written
+ * ({@link #expireAfterWrite}) or after they weren't read or written for a
+ * while ({@link #expireAfterAccess}). Expiration times are kept on a
+ * {@link TimerWheel}, which every {@code get} and {@code put} advances to the
+ * current time, removing the entries that expired in the meantime, so no call
+ * scans the whole cache. An expired entry is never returned, but it's counted
+ * by {@code size} until one of those calls cleans it up.
+ * <p>
+ * Instead of the number of entries, the cache can be bounded by their total
+ * weight ({@link #maximumWeight}), which is what to use when values differ a
+ * lot in size. After every {@code put} entries are evicted from the tail
+ * until the total is within the budget again. An entry heavier than the whole
+ * budget is not stored at all, and the other entries are left alone.
+ */
 @SuppressWarnings("unchecked")
-class LRUCache<K, V> implements Lru<K, V> {
+public class LRUCache<K, V> implements Lru<K, V> {
+
+    private static final int INITIAL_TABLE_SIZE = 3;
+    private static final double LOAD_FACTOR = 0.75;
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
 
     private final int capacity;
+    private final boolean powerOfTwoTable;
+    //Scrambles the hash codes of this cache's index, see SeededHash
+    private final int seed = SeededHash.newSeed();
     private int count = 0;
+    private int threshold;
 
-    private final Node<K, V>[] table;
+    private Node<K, V>[] table;
     private Node<K, V> head;
     private Node<K, V> tail;
 
+    //Expiry, the wheel is null when entries don't expire
+    private final Ticker ticker;
+    private final TimerWheel timerWheel;
+    private final long expireAfterNanos;
+    private final boolean refreshOnAccess;
+
+    //Weight bound, the weigher is null when the cache is bounded by capacity and every entry weighs 1
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximumWeight;
+    private long weightedSize = 0;
+
     public LRUCache(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param powerOfTwoTable when {@code true} the index table is kept at a
+     *                        power of two and slots are selected by masking the
+     *                        scrambled hash instead of taking the remainder
+     */
+    public LRUCache(int capacity, boolean powerOfTwoTable) {
+        this(capacity, powerOfTwoTable, null, 0, false, null, Long.MAX_VALUE);
+    }
+
+    private LRUCache(int capacity, boolean powerOfTwoTable, Ticker ticker, long expireAfterNanos,
+                     boolean refreshOnAccess, Weigher<? super K, ? super V> weigher, long maximumWeight) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (maximumWeight < 1) throw new IllegalArgumentException("Invalid maximum weight: " + maximumWeight);
         this.capacity = capacity;
-        table = (Node<K, V>[]) new Node[capacity];
+        this.powerOfTwoTable = powerOfTwoTable;
+        this.ticker = ticker;
+        this.timerWheel = ticker == null ? null : new TimerWheel(ticker.read());
+        this.expireAfterNanos = expireAfterNanos;
+        this.refreshOnAccess = refreshOnAccess;
+        this.weigher = weigher;
+        this.maximumWeight = maximumWeight;
+        initTable();
+    }
+
+    /**
+     * Creates a cache bounded by the total weight of its entries, as computed
+     * by {@code weigher}, rather than by their number.
+     */
+    public static <K, V> LRUCache<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        if (weigher == null) throw new IllegalArgumentException("Nullable weigher isn't supported");
+        return new LRUCache<>(Integer.MAX_VALUE, false, null, 0, false, weigher, maximumWeight);
+    }
+
+    /**
+     * Creates a cache whose entries expire {@code ttl} after they were put,
+     * reads don't extend their lifetime.
+     */
+    public static <K, V> LRUCache<K, V> expireAfterWrite(int capacity, Duration ttl) {
+        return expireAfterWrite(capacity, ttl, Ticker.system());
+    }
+
+    public static <K, V> LRUCache<K, V> expireAfterWrite(int capacity, Duration ttl, Ticker ticker) {
+        return new LRUCache<>(capacity, false, ticker, toNanos(ttl), false, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a cache whose entries expire once they weren't read or put for
+     * {@code tti}.
+     */
+    public static <K, V> LRUCache<K, V> expireAfterAccess(int capacity, Duration tti) {
+        return expireAfterAccess(capacity, tti, Ticker.system());
+    }
+
+    public static <K, V> LRUCache<K, V> expireAfterAccess(int capacity, Duration tti, Ticker ticker) {
+        return new LRUCache<>(capacity, false, ticker, toNanos(tti), true, null, Long.MAX_VALUE);
+    }
+
+    private static long toNanos(Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Invalid duration: " + duration);
+        }
+        //Saturates at about 292 years
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void initTable() {
+        int tableSize = powerOfTwoTable ? tableSizeFor(INITIAL_TABLE_SIZE) : INITIAL_TABLE_SIZE;
+        table = (Node<K, V>[]) new Node[tableSize];
+        threshold = (int) (tableSize * LOAD_FACTOR);
     }
 
     @Override
@@ -25,13 +149,23 @@ class LRUCache<K, V> implements Lru<K, V> {
         return count == 0;
     }
 
+    /**
+     * Total weight of the entries in the cache, the same as {@link #size()}
+     * unless the cache was created with a {@link Weigher}.
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
     @Override
     public void clear() {
-        for (int i = 0; i < table.length; i++) {
-            table[i] = null;
-        }
         cleaList();
+        initTable();
+        if (timerWheel != null) {
+            timerWheel.clear();
+        }
         count = 0;
+        weightedSize = 0;
     }
 
     private void cleaList() {
@@ -39,7 +173,9 @@ class LRUCache<K, V> implements Lru<K, V> {
         while (trav != null) {
             Node<K, V> next = trav.next;
             trav.value = null;
+            trav.prev = null;
             trav.next = null;
+            trav.nextInBucket = null;
             trav = next;
         }
         head = null;
@@ -49,10 +185,18 @@ class LRUCache<K, V> implements Lru<K, V> {
     @Override
     public V get(K key) {
         checkKey(key);
-        int hash = key.hashCode();
-        int index = normalizeIndex(hash);
-        Node<K, V> node = table[index];
+        long now = expireEntries();
+        Node<K, V> node = find(key, SeededHash.scramble(key.hashCode(), seed));
         if (node != null) {
+            if (timerWheel != null) {
+                if (isExpired(node, now)) {
+                    removeNode(node);
+                    return null;
+                }
+                if (refreshOnAccess) {
+                    scheduleExpiry(node, now);
+                }
+            }
             setRecentlyUsed(node);
             return node.value;
         } else {
@@ -65,32 +209,105 @@ class LRUCache<K, V> implements Lru<K, V> {
         checkKey(key);
         checkValue(value);
 
-        int hash = key.hashCode();
-        int index = normalizeIndex(hash);
+        long now = expireEntries();
+        int hash = SeededHash.scramble(key.hashCode(), seed);
+        Node<K, V> node = find(key, hash);
+        int weight = weigh(key, value);
 
-        Node<K, V> node = table[index];
+        if (weight > maximumWeight) {
+            //Can never fit, keeping it would flush every other entry first.
+            //The old value is dropped too, it must not outlive the put
+            if (node != null) {
+                removeNode(node);
+            }
+            return;
+        }
 
-        if (node != null && node.key.equals(key)) {
+        if (node != null) {
+            weightedSize += weight - node.weight;
+            node.weight = weight;
             node.value = value;
             setRecentlyUsed(node);
         } else {
-            add(index, key, value);
+            node = add(hash, key, value, weight);
+        }
+        if (timerWheel != null) {
+            scheduleExpiry(node, now);
+        }
+        if (weightedSize > maximumWeight) {
+            evictToWeight();
+        }
+    }
+
+    private int weigh(K key, V value) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        return weight;
+    }
+
+    //Evicts from the tail until the entries fit into the weight budget again
+    private void evictToWeight() {
+        while (weightedSize > maximumWeight) {
+            removeLeastUsed();
+        }
+    }
+
+    //Advances the timer wheel and returns the current time, or 0 when entries don't expire
+    private long expireEntries() {
+        if (timerWheel == null) {
+            return 0;
+        }
+        long now = ticker.read();
+        timerWheel.advance(now, timer -> removeNode((Node<K, V>) timer));
+        return now;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return node.expiresAt - now <= 0;
+    }
+
+    private void scheduleExpiry(Node<K, V> node, long now) {
+        //May wrap around, times are only ever compared by their difference
+        node.expiresAt = now + expireAfterNanos;
+        timerWheel.reschedule(node);
+    }
+
+    private Node<K, V> find(K key, int hash) {
+        Node<K, V> node = table[normalizeIndex(hash)];
+        while (node != null) {
+            if (node.hash == hash && node.key.equals(key)) {
+                return node;
+            }
+            node = node.nextInBucket;
         }
+        return null;
     }
 
-    private void add(int index, K key, V value) {
+    private Node<K, V> add(int hash, K key, V value, int weight) {
         if (count >= capacity) {
             removeLeastUsed();
-            count--;
+        } else if (count >= threshold) {
+            resizeTable();
         }
 
-        if (isEmpty() || capacity == 1) {
-            table[index] = head = tail = new Node<>(key, value, null, null);
+        Node<K, V> node = new Node<>(hash, key, value, null, head);
+        node.weight = weight;
+        weightedSize += weight;
+        if (head == null) {
+            tail = node;
         } else {
-            table[index] = head.prev = new Node<>(key, value, null, head);
-            head = head.prev;
+            head.prev = node;
         }
+        head = node;
+
+        int index = normalizeIndex(hash);
+        node.nextInBucket = table[index];
+        table[index] = node;
         count++;
+        return node;
     }
 
     private void setRecentlyUsed(Node<K, V> node) {
@@ -115,24 +332,83 @@ class LRUCache<K, V> implements Lru<K, V> {
     }
 
     private void removeLeastUsed() {
-        Node<K, V> t = tail;
-        //Clean up slot in the hash table
-        int hash = t.key.hashCode();
-        int index = normalizeIndex(hash);
-        table[index] = null;
+        removeNode(tail);
+    }
+
+    private void removeNode(Node<K, V> node) {
+        //Clean up the entry in the index and on the timer wheel
+        unlinkFromBucket(node);
+        if (timerWheel != null) {
+            timerWheel.deschedule(node);
+        }
+
+        //Unlink the node from the data_structures.list
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        //Clean up data from the removed node
+        node.value = null;
+        node.prev = null;
+        node.next = null;
+        count--;
+        weightedSize -= node.weight;
+    }
 
-        if (capacity != 1) {
-            //Reset the tail of the data_structures.list
-            tail = t.prev;
-            tail.next = null;
-            //Clean up data from the evicted tail
-            t.value = null;
-            t.prev = null;
+    private void unlinkFromBucket(Node<K, V> node) {
+        int index = normalizeIndex(node.hash);
+        Node<K, V> prev = null;
+        Node<K, V> trav = table[index];
+        while (trav != node) {
+            prev = trav;
+            trav = trav.nextInBucket;
+        }
+        if (prev == null) {
+            table[index] = node.nextInBucket;
+        } else {
+            prev.nextInBucket = node.nextInBucket;
         }
+        node.nextInBucket = null;
     }
 
-    private int normalizeIndex(int hashCode) {
-        return (hashCode & 0x7FFFFFFF) % capacity;
+    private void resizeTable() {
+        if (table.length >= MAXIMUM_TABLE_SIZE) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        Node<K, V>[] oldTable = table;
+        table = (Node<K, V>[]) new Node[oldTable.length * 2];
+        threshold = (int) (table.length * LOAD_FACTOR);
+        for (Node<K, V> bucket : oldTable) {
+            Node<K, V> node = bucket;
+            while (node != null) {
+                Node<K, V> next = node.nextInBucket;
+                int index = normalizeIndex(node.hash);
+                node.nextInBucket = table[index];
+                table[index] = node;
+                node = next;
+            }
+        }
+    }
+
+    private int normalizeIndex(int hash) {
+        if (powerOfTwoTable) {
+            return hash & (table.length - 1);
+        }
+        return (hash & 0x7FFFFFFF) % table.length;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_TABLE_SIZE) {
+            return MAXIMUM_TABLE_SIZE;
+        }
+        return Math.max(1, Integer.highestOneBit(capacity - 1) << 1);
     }
 
     private void checkKey(K key) {
@@ -143,13 +419,18 @@ class LRUCache<K, V> implements Lru<K, V> {
         if (value == null) throw new IllegalArgumentException("Nullable value isn't supported");
     }
 
-    private static class Node<K, V> {
-        K key;
+    private static class Node<K, V> extends TimerWheel.Timer {
+        final int hash;
+        final K key;
         V value;
         Node<K, V> prev;
         Node<K, V> next;
+        //Next node in the same index bucket
+        Node<K, V> nextInBucket;
+        int weight;
 
-        public Node(K key, V value, Node<K, V> prev, Node<K, V> next) {
+        public Node(int hash, K key, V value, Node<K, V> prev, Node<K, V> next) {
+            this.hash = hash;
             this.key = key;
             this.value = value;
             this.prev = prev;
@@ -181,9 +462,9 @@ class LRUCache<K, V> implements Lru<K, V> {
     }
 
     public static void main(String[] args) {
-        Lru<String, String> cache = new LRUCache<>(1);
+        Lru<String, String> cache = new LRUCache<>(3);
 
-        for (int i = 0; i < 1; i++) {
+        for (int i = 0; i < 3; i++) {
             cache.put("Key" + i, "Value" + i);
         }
 
@@ -201,8 +482,36 @@ class LRUCache<K, V> implements Lru<K, V> {
 
         System.out.println(cache);
 
+        System.out.println("GET evicted: " + cache.get("Key" + 1));
+
         cache.clear();
 
         System.out.println(cache);
+
+        //A ticker moved by hand instead of waiting
+        long[] now = {0};
+        Lru<String, String> sessions = LRUCache.expireAfterAccess(10, Duration.ofMinutes(30), () -> now[0]);
+        sessions.put("alice", "session1");
+        sessions.put("bob", "session2");
+        now[0] += Duration.ofMinutes(20).toNanos();
+        sessions.get("alice");
+        now[0] += Duration.ofMinutes(20).toNanos();
+
+        System.out.println("GET alice: " + sessions.get("alice"));
+        System.out.println("GET bob: " + sessions.get("bob"));
+        System.out.println(sessions);
+
+        //Bounded by the total length of the values
+        LRUCache<String, String> pages = LRUCache.maximumWeight(20, (k, v) -> v.length());
+        pages.put("small", "12345");
+        pages.put("medium", "1234567890");
+        pages.put("large", "123456789012");
+
+        System.out.println(pages + " weighted size: " + pages.weightedSize());
+
+        //Heavier than the whole budget, not stored and nothing else is evicted
+        pages.put("huge", "123456789012345678901234567890");
+
+        System.out.println(pages + " weighted size: " + pages.weightedSize());
     }
 }
@@ -0,0 +1,20 @@
+package data_structures.lru_cache;
+
+/**
+ * Source of the current time in nanoseconds for expiring caches. The value has
+ * no relation to the wall clock, only differences between readings matter,
+ * like for {@link System#nanoTime()}.
+ * <p>
+ * Tests pass a ticker they advance by hand, so expiry happens exactly when
+ * they say so instead of after a sleep.
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    long read();
+
+    static Ticker system() {
+        return System::nanoTime;
+    }
+
+}
@@ -0,0 +1,160 @@
+package data_structures.lru_cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel that finds the expired entries of a cache without
+ * scanning all of them.
+ * <p>
+ * Each level is an array of buckets, a bucket is a circular doubly linked
+ * list of timers, so scheduling and descheduling are O(1). A bucket of level
+ * 0 spans about a second (2^30 ns) and the level has 64 of them; the levels
+ * above span about a minute, an hour and a day per bucket, and the last level
+ * is a single bucket for anything further away. A timer goes into the lowest
+ * level whose range covers its delay.
+ * <p>
+ * {@link #advance} walks only the buckets whose span elapsed since the
+ * previous call. Timers found there either expire, or, when they were parked
+ * in a coarse bucket, are scheduled again into a finer one, so the cost of
+ * expiring an entry is amortized over a few moves at most. Timers expire at
+ * the granularity of their bucket; the owner is expected to compare the
+ * expiration time itself before returning an entry.
+ * <p>
+ * Not thread safe.
+ */
+final class TimerWheel {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    //Span of a bucket per level, powers of two at or above 1s, 1m, 1h, 1d and 6.5d
+    private static final long[] SPANS = {
+            1L << 30, 1L << 36, 1L << 42, 1L << 47, 1L << 49, 1L << 49};
+    private static final int[] SHIFTS = {30, 36, 42, 47, 49};
+
+    /**
+     * Link fields of an entry scheduled on the wheel. Cache nodes extend it,
+     * so scheduling allocates nothing.
+     */
+    static class Timer {
+        long expiresAt;
+        Timer prevInTimer;
+        Timer nextInTimer;
+
+        boolean isScheduled() {
+            return nextInTimer != null;
+        }
+    }
+
+    //Head of a bucket, points to itself when the bucket is empty
+    private static final class Sentinel extends Timer {
+        Sentinel() {
+            prevInTimer = this;
+            nextInTimer = this;
+        }
+    }
+
+    private final Sentinel[][] wheel;
+    private long nanos;
+
+    TimerWheel(long now) {
+        nanos = now;
+        wheel = new Sentinel[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Sentinel[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = new Sentinel();
+            }
+        }
+    }
+
+    void schedule(Timer timer) {
+        Sentinel sentinel = findBucket(timer.expiresAt);
+        timer.prevInTimer = sentinel.prevInTimer;
+        timer.nextInTimer = sentinel;
+        sentinel.prevInTimer.nextInTimer = timer;
+        sentinel.prevInTimer = timer;
+    }
+
+    void deschedule(Timer timer) {
+        if (timer.isScheduled()) {
+            timer.prevInTimer.nextInTimer = timer.nextInTimer;
+            timer.nextInTimer.prevInTimer = timer.prevInTimer;
+            timer.prevInTimer = null;
+            timer.nextInTimer = null;
+        }
+    }
+
+    void reschedule(Timer timer) {
+        deschedule(timer);
+        schedule(timer);
+    }
+
+    /**
+     * Moves the wheel to {@code now} and hands every timer that expired on the
+     * way to {@code onExpired}, already descheduled.
+     */
+    void advance(long now, Consumer<Timer> onExpired) {
+        long previous = nanos;
+        nanos = now;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            expire(i, previousTicks, delta, onExpired);
+        }
+    }
+
+    //Drains the buckets of a level that the clock passed over, including the one it was in
+    private void expire(int level, long previousTicks, long delta, Consumer<Timer> onExpired) {
+        Sentinel[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Sentinel sentinel = buckets[i & mask];
+            Timer timer = sentinel.nextInTimer;
+            sentinel.prevInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+            while (timer != sentinel) {
+                Timer next = timer.nextInTimer;
+                timer.prevInTimer = null;
+                timer.nextInTimer = null;
+                if (timer.expiresAt - nanos > 0) {
+                    schedule(timer);
+                } else {
+                    onExpired.accept(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    void clear() {
+        for (Sentinel[] buckets : wheel) {
+            for (Sentinel sentinel : buckets) {
+                Timer timer = sentinel.nextInTimer;
+                while (timer != sentinel) {
+                    Timer next = timer.nextInTimer;
+                    timer.prevInTimer = null;
+                    timer.nextInTimer = null;
+                    timer = next;
+                }
+                sentinel.prevInTimer = sentinel;
+                sentinel.nextInTimer = sentinel;
+            }
+        }
+    }
+
+    private Sentinel findBucket(long time) {
+        long duration = time - nanos;
+        for (int i = 0; i < BUCKETS.length - 1; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFTS[i];
+                return wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+            }
+        }
+        return wheel[BUCKETS.length - 1][0];
+    }
+}
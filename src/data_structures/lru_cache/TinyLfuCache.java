@@ -0,0 +1,270 @@
+package data_structures.lru_cache;
+
+import data_structures.hash_table.Hashable;
+import data_structures.hash_table.NodeBasedHashTableSeparateChaining;
+
+/**
+ * Bounded cache with the W-TinyLFU eviction policy, an alternative to the
+ * pure recency order of {@link LRUCache} for traffic where scans of keys that
+ * are read once would flush the popular ones out of an LRU.
+ * <ul>
+ * <li>New entries go into a small LRU window, 1% of the capacity, which
+ * absorbs bursts of new keys without letting them into the main region.</li>
+ * <li>The main region is a segmented LRU: entries evicted from the window
+ * enter its probation segment, and an entry hit while on probation moves to
+ * the protected segment, 80% of the main region. Entries pushed out of the
+ * protected segment go back to probation.</li>
+ * <li>When the main region is full, the entry leaving the window (the
+ * candidate) and the least recently used probation entry (the victim) are
+ * compared by their estimated frequency in a {@link FrequencySketch}, which
+ * counts every read and write, present keys or not. The candidate is only
+ * admitted when it's seen more often than the victim, otherwise it's the one
+ * evicted.</li>
+ * </ul>
+ * Not thread safe. Nullable keys and values are not allowed.
+ */
+public class TinyLfuCache<K, V> implements Lru<K, V> {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node<K, V> {
+        final K key;
+        V value;
+        Node<K, V> prev;
+        Node<K, V> next;
+        int queue;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=>" + value;
+        }
+    }
+
+    //Doubly linked list from the most (head) to the least (tail) recently used node
+    private static final class AccessOrder<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size = 0;
+
+        void addFirst(Node<K, V> node) {
+            node.prev = null;
+            node.next = head;
+            if (head == null) {
+                tail = node;
+            } else {
+                head.prev = node;
+            }
+            head = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToFront(Node<K, V> node) {
+            if (node != head) {
+                remove(node);
+                addFirst(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    private final int maxWindow;
+    private final int maxMain;
+    private final int maxProtected;
+
+    private final Hashable<K, Node<K, V>> index = new NodeBasedHashTableSeparateChaining<>(16, 0.75, true);
+    private final FrequencySketch sketch;
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+
+    public TinyLfuCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        maxWindow = Math.max(1, (int) ((long) capacity * WINDOW_PERCENT / 100));
+        maxMain = capacity - maxWindow;
+        maxProtected = (int) ((long) maxMain * PROTECTED_PERCENT / 100);
+        sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public int size() {
+        return window.size + probation.size + protectedSegment.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    @Override
+    public V get(K key) {
+        checkKey(key);
+        sketch.increment(key.hashCode());
+        Node<K, V> node = index.get(key);
+        if (node == null) {
+            return null;
+        }
+        onHit(node);
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        checkKey(key);
+        checkValue(value);
+        sketch.increment(key.hashCode());
+        Node<K, V> node = index.get(key);
+        if (node != null) {
+            node.value = value;
+            onHit(node);
+            return;
+        }
+
+        node = new Node<>(key, value);
+        node.queue = WINDOW;
+        index.put(key, node);
+        window.addFirst(node);
+        if (window.size > maxWindow) {
+            evictFromWindow();
+        }
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToFront(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedSegment.addFirst(node);
+                if (protectedSegment.size > maxProtected) {
+                    Node<K, V> demoted = protectedSegment.tail;
+                    protectedSegment.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addFirst(demoted);
+                }
+                break;
+            default:
+                protectedSegment.moveToFront(node);
+        }
+    }
+
+    //Moves the window's least recently used entry to probation if it wins against the main region's victim
+    private void evictFromWindow() {
+        Node<K, V> candidate = window.tail;
+        window.remove(candidate);
+        if (probation.size + protectedSegment.size < maxMain) {
+            candidate.queue = PROBATION;
+            probation.addFirst(candidate);
+            return;
+        }
+
+        Node<K, V> victim = probation.tail != null ? probation.tail : protectedSegment.tail;
+        if (victim == null || sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+            evict(candidate);
+            return;
+        }
+        if (victim.queue == PROBATION) {
+            probation.remove(victim);
+        } else {
+            protectedSegment.remove(victim);
+        }
+        evict(victim);
+        candidate.queue = PROBATION;
+        probation.addFirst(candidate);
+    }
+
+    private void evict(Node<K, V> node) {
+        index.remove(node.key);
+        node.value = null;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) throw new IllegalArgumentException("Nullable key isn't supported");
+    }
+
+    private void checkValue(V value) {
+        if (value == null) throw new IllegalArgumentException("Nullable value isn't supported");
+    }
+
+    //Window, probation and protected entries, each from the most to the least recently used
+    @Override
+    @SuppressWarnings("unchecked")
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append("[");
+        for (AccessOrder<K, V> order : new AccessOrder[]{window, probation, protectedSegment}) {
+            for (Node<K, V> node = order.head; node != null; node = node.next) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(node);
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    public static void main(String[] args) {
+        Lru<String, String> cache = new TinyLfuCache<>(3);
+
+        for (int i = 0; i < 3; i++) {
+            cache.put("Key" + i, "Value" + i);
+        }
+        //Key0 gets popular
+        for (int i = 0; i < 5; i++) {
+            cache.get("Key0");
+        }
+
+        System.out.println(cache);
+
+        //A scan of keys read once doesn't push Key0 out
+        for (int i = 100; i < 110; i++) {
+            cache.put("Key" + i, "Value" + i);
+        }
+
+        System.out.println(cache);
+        System.out.println("GET: " + cache.get("Key0"));
+
+        cache.clear();
+
+        System.out.println(cache);
+    }
+}
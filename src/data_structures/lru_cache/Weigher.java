@@ -0,0 +1,17 @@
+package data_structures.lru_cache;
+
+/**
+ * Computes the weight of a cache entry, e.g. its approximate size in bytes,
+ * for caches bounded by total weight instead of by the number of entries.
+ * The weight of an entry is computed when it's put and isn't updated
+ * afterwards, so it must not depend on mutable state.
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * @return the weight of the entry, never negative
+     */
+    int weigh(K key, V value);
+
+}
@@ -0,0 +1,118 @@
+package data_structures.lru_cache.benchmark;
+
+import data_structures.lru_cache.ConcurrentLRUCache;
+import data_structures.lru_cache.LRUCache;
+import data_structures.lru_cache.Lru;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Read-mostly throughput of a single {@link LRUCache} behind one lock, next
+ * to {@link ConcurrentLRUCache} with locked and with buffered recency updates,
+ * for a growing number of threads. Every thread replays its own Zipfian trace
+ * over the same popular keys, and a miss loads the key with {@code put}, so
+ * most operations are hits. The hit ratio is printed too, to show what the
+ * approximate recency order of the segments costs.
+ * <p>
+ * Scaling can only show up with at least as many cores as threads.
+ */
+public class ConcurrentLruBenchmark {
+
+    private static final int CAPACITY = 10_000;
+    private static final int KEY_SPACE = 100_000;
+    private static final int OPERATIONS_PER_THREAD = 2_000_000;
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int ROUNDS = 3;
+
+    private static class SynchronizedLru<K, V> implements Lru<K, V> {
+        private final Lru<K, V> lru;
+
+        SynchronizedLru(Lru<K, V> lru) {
+            this.lru = lru;
+        }
+
+        public synchronized int size() {
+            return lru.size();
+        }
+
+        public synchronized boolean isEmpty() {
+            return lru.isEmpty();
+        }
+
+        public synchronized void clear() {
+            lru.clear();
+        }
+
+        public synchronized V get(K key) {
+            return lru.get(key);
+        }
+
+        public synchronized void put(K key, V value) {
+            lru.put(key, value);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        int maxThreads = THREADS[THREADS.length - 1];
+        //Same popular keys for every thread, drawn independently
+        ZipfianTrace zipf = new ZipfianTrace(KEY_SPACE, 0.99, 42);
+        int[][] traces = new int[maxThreads][];
+        for (int t = 0; t < maxThreads; t++) {
+            traces[t] = zipf.next(OPERATIONS_PER_THREAD);
+        }
+
+        for (int threads : THREADS) {
+            for (int round = 0; round < ROUNDS; round++) {
+                boolean report = round == ROUNDS - 1;
+                run("synchronized LRUCache", () -> new SynchronizedLru<>(new LRUCache<>(CAPACITY)),
+                        traces, threads, report);
+                run("segments, locked reads", () -> new ConcurrentLRUCache<>(CAPACITY, 16, false),
+                        traces, threads, report);
+                run("segments, read buffers", () -> new ConcurrentLRUCache<>(CAPACITY, 16, true),
+                        traces, threads, report);
+            }
+        }
+    }
+
+    private static void run(String name, Supplier<Lru<Integer, Integer>> factory,
+                            int[][] traces, int threads, boolean report) throws InterruptedException {
+        Lru<Integer, Integer> cache = factory.get();
+        LongAdder hits = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int[] trace = traces[t];
+            new Thread(() -> {
+                try {
+                    start.await();
+                    long localHits = 0;
+                    for (int key : trace) {
+                        if (cache.get(key) == null) {
+                            cache.put(key, key);
+                        } else {
+                            localHits++;
+                        }
+                    }
+                    hits.add(localHits);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+
+        if (report) {
+            long operations = (long) threads * OPERATIONS_PER_THREAD;
+            System.out.printf("%d threads  %-24s %8.2f Mops/s   hit ratio %5.2f%%%n", threads, name,
+                    operations * 1e3 / nanos, hits.sum() * 100.0 / operations);
+        }
+    }
+}
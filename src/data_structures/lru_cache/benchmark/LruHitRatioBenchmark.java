@@ -0,0 +1,79 @@
+package data_structures.lru_cache.benchmark;
+
+import data_structures.lru_cache.LRUCache;
+import data_structures.lru_cache.Lru;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replays Zipfian traces against {@link LRUCache} and reports its hit ratio
+ * next to the one of an exact LRU ({@link LinkedHashMap} in access order),
+ * for a few cache sizes and skews. The two columns should match: an LRU of a
+ * given capacity keeps exactly the {@code capacity} most recently used keys.
+ * <p>
+ * Every hit is also checked against the key that was requested, so a cache
+ * answering with the value of another key fails the benchmark instead of
+ * inflating the hit ratio.
+ */
+public class LruHitRatioBenchmark {
+
+    private static final int KEY_SPACE = 100_000;
+    private static final int ACCESSES = 2_000_000;
+    private static final int[] CAPACITIES = {100, 1_000, 10_000};
+    private static final double[] EXPONENTS = {0.8, 0.99, 1.2};
+
+    @SuppressWarnings("serial")
+    private static class ReferenceLru<K, V> extends LinkedHashMap<K, V> {
+        private final int capacity;
+
+        ReferenceLru(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-10s %-10s %12s %12s%n", "exponent", "capacity", "LRUCache", "exact LRU");
+        for (double exponent : EXPONENTS) {
+            int[] trace = new ZipfianTrace(KEY_SPACE, exponent, 42).next(ACCESSES);
+            for (int capacity : CAPACITIES) {
+                double lru = hitRatio(new LRUCache<>(capacity), trace);
+                double reference = referenceHitRatio(new ReferenceLru<>(capacity), trace);
+                System.out.printf("%-10.2f %-10d %11.2f%% %11.2f%%%n", exponent, capacity, lru * 100, reference * 100);
+            }
+        }
+    }
+
+    private static double hitRatio(Lru<Integer, Integer> cache, int[] trace) {
+        long hits = 0;
+        for (int key : trace) {
+            Integer value = cache.get(key);
+            if (value == null) {
+                cache.put(key, key);
+            } else if (value != key) {
+                throw new IllegalStateException("Key " + key + " returned the value of key " + value);
+            } else {
+                hits++;
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    private static double referenceHitRatio(Map<Integer, Integer> cache, int[] trace) {
+        long hits = 0;
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            } else {
+                hits++;
+            }
+        }
+        return (double) hits / trace.length;
+    }
+}
@@ -0,0 +1,86 @@
+package data_structures.lru_cache.benchmark;
+
+import data_structures.lru_cache.LRUCache;
+import data_structures.lru_cache.Lru;
+import data_structures.lru_cache.TinyLfuCache;
+
+import java.util.function.IntFunction;
+
+/**
+ * Replays synthetic traces against {@link LRUCache} and {@link TinyLfuCache}
+ * and compares their hit ratios.
+ * <ul>
+ * <li>zipf: Zipfian popularity over a key space ten times the largest cache,
+ * the case both policies are built for.</li>
+ * <li>zipf + scans: the same trace, interrupted every 20k accesses by a scan
+ * of 5k keys that are never requested again, like a batch job or a crawler
+ * sharing the cache with regular traffic.</li>
+ * <li>loop: keys requested round robin over a range 1.5 times the cache,
+ * where LRU always evicts the key that comes next.</li>
+ * </ul>
+ * A miss loads the key with {@code put}, like a read-through cache.
+ */
+public class TinyLfuHitRatioBenchmark {
+
+    private static final int KEY_SPACE = 100_000;
+    private static final int ACCESSES = 2_000_000;
+    private static final int[] CAPACITIES = {1_000, 10_000};
+    private static final int SCAN_INTERVAL = 20_000;
+    private static final int SCAN_LENGTH = 5_000;
+
+    public static void main(String[] args) {
+        int[] zipf = new ZipfianTrace(KEY_SPACE, 0.9, 42).next(ACCESSES);
+        int[] scans = withScans(zipf);
+
+        System.out.printf("%-14s %-10s %10s %10s%n", "trace", "capacity", "LRU", "W-TinyLFU");
+        for (int capacity : CAPACITIES) {
+            compare("zipf", zipf, capacity);
+            compare("zipf + scans", scans, capacity);
+            compare("loop", loop(capacity * 3 / 2), capacity);
+        }
+    }
+
+    private static void compare(String name, int[] trace, int capacity) {
+        double lru = hitRatio(LRUCache::new, capacity, trace);
+        double tinyLfu = hitRatio(TinyLfuCache::new, capacity, trace);
+        System.out.printf("%-14s %-10d %9.2f%% %9.2f%%%n", name, capacity, lru * 100, tinyLfu * 100);
+    }
+
+    private static double hitRatio(IntFunction<Lru<Integer, Integer>> factory, int capacity, int[] trace) {
+        Lru<Integer, Integer> cache = factory.apply(capacity);
+        long hits = 0;
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            } else {
+                hits++;
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    //Scan keys start past the key space, so each of them is requested once
+    private static int[] withScans(int[] trace) {
+        int scanCount = trace.length / SCAN_INTERVAL;
+        int[] result = new int[trace.length + scanCount * SCAN_LENGTH];
+        int nextScanKey = KEY_SPACE;
+        int r = 0;
+        for (int i = 0; i < trace.length; i++) {
+            result[r++] = trace[i];
+            if ((i + 1) % SCAN_INTERVAL == 0) {
+                for (int j = 0; j < SCAN_LENGTH; j++) {
+                    result[r++] = nextScanKey++;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int[] loop(int range) {
+        int[] trace = new int[ACCESSES];
+        for (int i = 0; i < ACCESSES; i++) {
+            trace[i] = i % range;
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,60 @@
+package data_structures.lru_cache.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Access trace whose keys follow a Zipf distribution: the key of rank
+ * {@code r} (starting at 1) is requested with a probability proportional to
+ * {@code 1 / r^exponent}. An exponent close to 1 resembles the popularity of
+ * web objects, where a few keys take most of the traffic and a long tail is
+ * requested rarely.
+ * <p>
+ * Keys are the ranks shuffled over the key space, so popular keys aren't
+ * clustered at small integers.
+ */
+public class ZipfianTrace {
+
+    private final double[] cumulative;
+    private final int[] keyOfRank;
+    private final Random random;
+
+    public ZipfianTrace(int keySpace, double exponent, long seed) {
+        if (keySpace < 1) throw new IllegalArgumentException("Invalid key space: " + keySpace);
+        random = new Random(seed);
+        cumulative = new double[keySpace];
+        double sum = 0;
+        for (int rank = 1; rank <= keySpace; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < keySpace; i++) {
+            cumulative[i] /= sum;
+        }
+
+        keyOfRank = new int[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keyOfRank[i] = i;
+        }
+        for (int i = keySpace - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = keyOfRank[i];
+            keyOfRank[i] = keyOfRank[j];
+            keyOfRank[j] = tmp;
+        }
+    }
+
+    public int next() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (rank < 0) rank = -rank - 1;
+        return keyOfRank[Math.min(rank, keyOfRank.length - 1)];
+    }
+
+    public int[] next(int length) {
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            trace[i] = next();
+        }
+        return trace;
+    }
+}